@@ -0,0 +1,128 @@
+package com.bug95.tablayout;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.RestrictTo;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+import static android.support.annotation.RestrictTo.Scope.LIBRARY_GROUP;
+
+/**
+ * The number of measure and layout passes the views of an {@link XTabLayout} went through in
+ * the last frame, see {@link XTabLayout#setLayoutPassCountingEnabled(boolean)}.
+ * <p>
+ * A frame ends when the tab strip is drawn, so passes which aren't followed by a draw are
+ * counted towards the next frame which is. One instance is kept per tab layout and updated in
+ * place at the end of each frame.
+ */
+public final class LayoutPassStats {
+
+    /**
+     * The {@link XTabLayout} itself.
+     */
+    public static final int VIEW_TAB_LAYOUT = 0;
+
+    /**
+     * The container the tab layout scrolls, which holds the tab strip and the center tab.
+     */
+    public static final int VIEW_CONTENT_ROOT = 1;
+
+    /**
+     * The strip holding the tab views and drawing the indicator.
+     */
+    public static final int VIEW_TAB_STRIP = 2;
+
+    /**
+     * The tab views, counted across all of them.
+     */
+    public static final int VIEW_TAB_VIEW = 3;
+
+    private static final int VIEW_COUNT = 4;
+
+    /**
+     * @hide
+     */
+    @RestrictTo(LIBRARY_GROUP)
+    @IntDef(value = {VIEW_TAB_LAYOUT, VIEW_CONTENT_ROOT, VIEW_TAB_STRIP, VIEW_TAB_VIEW})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface ViewKind {
+    }
+
+    // The frame which is being counted
+    final int[] mMeasures = new int[VIEW_COUNT];
+    final int[] mLayouts = new int[VIEW_COUNT];
+
+    // The last frame
+    private final int[] mFrameMeasures = new int[VIEW_COUNT];
+    private final int[] mFrameLayouts = new int[VIEW_COUNT];
+    private int mFrameMaxTabViewMeasures;
+    private int mFrameMaxTabViewLayouts;
+    private long mFrameCount;
+
+    LayoutPassStats() {
+    }
+
+    /**
+     * Returns the number of times views of the given kind were measured in the last frame.
+     */
+    public int getMeasureCount(@ViewKind int view) {
+        return mFrameMeasures[view];
+    }
+
+    /**
+     * Returns the number of times views of the given kind were laid out in the last frame.
+     */
+    public int getLayoutCount(@ViewKind int view) {
+        return mFrameLayouts[view];
+    }
+
+    /**
+     * Returns the most times any single tab view was measured in the last frame. More than one
+     * means that something measured the tab views again within the frame.
+     */
+    public int getMaxTabViewMeasureCount() {
+        return mFrameMaxTabViewMeasures;
+    }
+
+    /**
+     * Returns the most times any single tab view was laid out in the last frame.
+     */
+    public int getMaxTabViewLayoutCount() {
+        return mFrameMaxTabViewLayouts;
+    }
+
+    /**
+     * Returns the number of frames counted so far.
+     */
+    public long getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Ends the frame being counted, making its counts the ones reported.
+     */
+    void endFrame(int maxTabViewMeasures, int maxTabViewLayouts) {
+        System.arraycopy(mMeasures, 0, mFrameMeasures, 0, VIEW_COUNT);
+        System.arraycopy(mLayouts, 0, mFrameLayouts, 0, VIEW_COUNT);
+        mFrameMaxTabViewMeasures = maxTabViewMeasures;
+        mFrameMaxTabViewLayouts = maxTabViewLayouts;
+        mFrameCount++;
+        for (int i = 0; i < VIEW_COUNT; i++) {
+            mMeasures[i] = 0;
+            mLayouts[i] = 0;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "M " + mFrameMeasures[VIEW_TAB_LAYOUT]
+                + "/" + mFrameMeasures[VIEW_CONTENT_ROOT]
+                + "/" + mFrameMeasures[VIEW_TAB_STRIP]
+                + "/" + mFrameMaxTabViewMeasures
+                + "  L " + mFrameLayouts[VIEW_TAB_LAYOUT]
+                + "/" + mFrameLayouts[VIEW_CONTENT_ROOT]
+                + "/" + mFrameLayouts[VIEW_TAB_STRIP]
+                + "/" + mFrameMaxTabViewLayouts;
+    }
+}
@@ -0,0 +1,100 @@
+package com.bug95.tablayout;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.graphics.drawable.Drawable;
+import android.graphics.drawable.StateListDrawable;
+import android.support.annotation.ColorInt;
+import android.support.annotation.DrawableRes;
+import android.support.annotation.Nullable;
+import android.support.v4.graphics.drawable.DrawableCompat;
+import android.support.v7.content.res.AppCompatResources;
+import android.util.SparseArray;
+import android.util.StateSet;
+
+/**
+ * Keeps the tab icons of {@link TabLayoutBuilder} once they have been loaded, keyed on their
+ * resource id and the screen density. Builders can share a cache with
+ * {@link TabLayoutBuilder#setIconCache(TabIconCache)}, so that tab bars showing the same icons
+ * only load them once. Icons are loaded with the theme of the first builder asking for them, so
+ * only share a cache between builders with the same theme.
+ * <p>
+ * A cache must only be used from the main thread.
+ */
+public class TabIconCache {
+
+    // Constant states by resource id, by density
+    private final SparseArray<SparseArray<Drawable.ConstantState>> mStates = new SparseArray<>();
+
+    /**
+     * Drops all cached icons.
+     */
+    public void clear() {
+        mStates.clear();
+    }
+
+    /**
+     * Returns a new drawable which shows {@code selectedResId} while its view is selected and
+     * {@code normalResId} otherwise.
+     */
+    @Nullable
+    Drawable getStateDrawable(Context context, @DrawableRes int normalResId,
+                              @DrawableRes int selectedResId) {
+        final Drawable normal = getDrawable(context, normalResId);
+        final Drawable selected = getDrawable(context, selectedResId);
+        if (normal == null || selected == null) {
+            return normal != null ? normal : selected;
+        }
+        final StateListDrawable drawable = new StateListDrawable();
+        drawable.addState(new int[]{android.R.attr.state_selected}, selected);
+        drawable.addState(StateSet.WILD_CARD, normal);
+        return drawable;
+    }
+
+    /**
+     * Returns a new drawable which shows the given icon tinted with {@code selectedColor} while
+     * its view is selected and with {@code normalColor} otherwise. The icon's bitmap is shared
+     * with other instances, only the tint is per drawable.
+     */
+    @Nullable
+    Drawable getTintedDrawable(Context context, @DrawableRes int resId,
+                               @ColorInt int normalColor, @ColorInt int selectedColor) {
+        final Drawable icon = getDrawable(context, resId);
+        if (icon == null) {
+            return null;
+        }
+        final Drawable drawable = DrawableCompat.wrap(icon.mutate());
+        DrawableCompat.setTintList(drawable, new ColorStateList(
+                new int[][]{new int[]{android.R.attr.state_selected}, StateSet.WILD_CARD},
+                new int[]{selectedColor, normalColor}));
+        return drawable;
+    }
+
+    /**
+     * Returns a new instance of the given drawable, or null if {@code resId} is 0.
+     */
+    @Nullable
+    Drawable getDrawable(Context context, @DrawableRes int resId) {
+        if (resId == 0) {
+            return null;
+        }
+        final Resources res = context.getResources();
+        final int density = res.getDisplayMetrics().densityDpi;
+        SparseArray<Drawable.ConstantState> states = mStates.get(density);
+        if (states == null) {
+            states = new SparseArray<>();
+            mStates.put(density, states);
+        }
+
+        final Drawable.ConstantState state = states.get(resId);
+        if (state != null) {
+            return state.newDrawable(res);
+        }
+        final Drawable drawable = AppCompatResources.getDrawable(context, resId);
+        if (drawable != null && drawable.getConstantState() != null) {
+            states.put(resId, drawable.getConstantState());
+        }
+        return drawable;
+    }
+}
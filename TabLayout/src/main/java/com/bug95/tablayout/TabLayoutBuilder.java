@@ -1,6 +1,8 @@
 package com.bug95.tablayout;
 
 import android.content.Context;
+import android.support.annotation.ColorInt;
+import android.support.annotation.DrawableRes;
 import android.support.annotation.IdRes;
 import android.util.AttributeSet;
 import android.view.Gravity;
@@ -16,40 +18,28 @@ import java.util.ArrayList;
 public class TabLayoutBuilder extends XTabLayout {
 
     private OnTabSelectedListener listener;
-    private ArrayList<View> mItemViews = new ArrayList<>();
+    private ArrayList<ItemHolder> mItemHolders = new ArrayList<>();
     private ArrayList<ItemStatus> mItemStatus = new ArrayList<>();
     private int mBottomMargin;
     private float mTextSize;
     private OnClickListener mCenterTabOnClickListener;
+    private TabIconCache mIconCache = new TabIconCache();
 
     {
         listener = new OnTabSelectedListener() {
             @Override
             public void onTabSelected(Tab tab) {
+                // The icon follows the selected state of the tab view
                 int position = tab.getPosition();
                 ItemStatus status = mItemStatus.get(position);
-                TextView view = getTextView(position);
-                ImageView img = getImageView(position);
-                if (view != null) {
-                    view.setTextColor(mItemStatus.get(position).getSelectedTitleColor());
-                }
-                if (status.getSelectedResId() != 0 && img != null) {
-                    img.setImageResource(status.getSelectedResId());
-                }
+                mItemHolders.get(position).mTitle.setTextColor(status.getSelectedTitleColor());
             }
 
             @Override
             public void onTabUnselected(Tab tab) {
                 int position = tab.getPosition();
                 ItemStatus status = mItemStatus.get(position);
-                TextView view = getTextView(position);
-                ImageView img = getImageView(position);
-                if (view != null) {
-                    view.setTextColor(status.getNormalTitleColor());
-                }
-                if (status.getNormalResId() != 0 && img != null) {
-                    img.setImageResource(status.getNormalResId());
-                }
+                mItemHolders.get(position).mTitle.setTextColor(status.getNormalTitleColor());
             }
 
             @Override
@@ -79,9 +69,9 @@ public class TabLayoutBuilder extends XTabLayout {
      * @param status Inner class {@link ItemStatus}
      */
     public void addTab(ItemStatus status) {
-        View inflate = getTabView(status);
+        ItemHolder holder = getTabView(status);
         mItemStatus.add(status);
-        mItemViews.add(inflate);
+        mItemHolders.add(holder);
     }
 
     /**
@@ -104,6 +94,21 @@ public class TabLayoutBuilder extends XTabLayout {
         mTextSize = sp;
     }
 
+    /**
+     * <p>Set the cache the tab icons are loaded through, to share it with other builders
+     * showing the same icons</p>
+     * <p>Must before {@link #addTab(ItemStatus)}</p>
+     *
+     * @param cache TabIconCache
+     */
+    public void setIconCache(TabIconCache cache) {
+        mIconCache = cache;
+    }
+
+    public TabIconCache getIconCache() {
+        return mIconCache;
+    }
+
     public void setOnCenterTabClickListener(View.OnClickListener onClickListener) {
         mCenterTabOnClickListener = onClickListener;
     }
@@ -114,19 +119,17 @@ public class TabLayoutBuilder extends XTabLayout {
      * @throws RuntimeException
      */
     public void build() {
-        if (mItemViews.isEmpty()) {
+        if (mItemHolders.isEmpty()) {
             throw new RuntimeException("Must call addTab(ItemStatus status) before!");
         }
         for (int i = 0; i < getTabCount(); i++) {
             XTabLayout.Tab tab = this.getTabAt(i);
             if (tab != null) {
-                tab.setCustomView(mItemViews.get(i));
+                ItemHolder holder = mItemHolders.get(i);
+                tab.setCustomView(holder.mItemView);
                 if (i == 0) {
                     tab.select();
-                    TextView view = getTextView(i);
-                    if (view != null) {
-                        view.setTextColor(mItemStatus.get(i).getSelectedTitleColor());
-                    }
+                    holder.mTitle.setTextColor(mItemStatus.get(i).getSelectedTitleColor());
                 }
             }
         }
@@ -135,44 +138,20 @@ public class TabLayoutBuilder extends XTabLayout {
     }
 
     /**
-     * Get CustomView child TextView
-     *
-     * @param position index
-     * @return TextView
+     * The item view of a tab, with its title, whose color changes with the selection. The icon
+     * follows the selected state by itself. The title is looked up once, when the item is
+     * inflated.
      */
-    private TextView getTextView(int position) {
-        if (mItemViews != null) {
-            ViewGroup parent = (ViewGroup) mItemViews.get(position);
-            int childCount = parent.getChildCount();
-            for (int i = 0; i < childCount; i++) {
-                if (parent.getChildAt(i) instanceof TextView) {
-                    return (TextView) parent.getChildAt(i);
-                }
-            }
-        }
-        return null;
-    }
+    private static final class ItemHolder {
+        final View mItemView;
+        final TextView mTitle;
 
-    /**
-     * Get CustomView child ImageView
-     *
-     * @param position index
-     * @return ImageView
-     */
-    private ImageView getImageView(int position) {
-        if (mItemViews != null) {
-            ViewGroup parent = (ViewGroup) mItemViews.get(position);
-            int childCount = parent.getChildCount();
-            for (int i = 0; i < childCount; i++) {
-                if (parent.getChildAt(i) instanceof ImageView) {
-                    return (ImageView) parent.getChildAt(i);
-                }
-            }
+        ItemHolder(View itemView, TextView title) {
+            mItemView = itemView;
+            mTitle = title;
         }
-        return null;
     }
 
-
     public static final class ItemStatus {
 
         private CharSequence title;
@@ -181,6 +160,7 @@ public class TabLayoutBuilder extends XTabLayout {
         private int selectedResId;
         private int normalTitleColor;
         private int selectedTitleColor;
+        private boolean tinted;
 
         public ItemStatus(CharSequence title, @IdRes int normalResId, @IdRes int selectedResId, int normalTitleColor, int selectedTitleColor) {
             this.title = title;
@@ -197,6 +177,27 @@ public class TabLayoutBuilder extends XTabLayout {
             this.selectedTitleColor = selectedTitleColor;
         }
 
+        /**
+         * <p>Create an item with a single icon, which is tinted with the title colors</p>
+         * <p>Only one bitmap per tab is decoded, rather than one for each state. For a 24dp
+         * icon at xxxhdpi (96x96px, ARGB_8888) this saves 36KB per tab, 180KB for a
+         * 5-tab bar</p>
+         *
+         * @param title              title
+         * @param iconResId          icon, tinted with the title color of each state
+         * @param normalTitleColor   color of the title and icon when not selected
+         * @param selectedTitleColor color of the title and icon when selected
+         * @return ItemStatus
+         */
+        public static ItemStatus tinted(CharSequence title, @DrawableRes int iconResId,
+                                        @ColorInt int normalTitleColor,
+                                        @ColorInt int selectedTitleColor) {
+            ItemStatus status = new ItemStatus(title, iconResId, normalTitleColor,
+                    selectedTitleColor);
+            status.tinted = true;
+            return status;
+        }
+
         private CharSequence getTitle() {
             return title;
         }
@@ -220,6 +221,10 @@ public class TabLayoutBuilder extends XTabLayout {
         private int getDrawableSelectorId() {
             return drawableSelectorId;
         }
+
+        private boolean isTinted() {
+            return tinted;
+        }
     }
 
 
@@ -227,9 +232,9 @@ public class TabLayoutBuilder extends XTabLayout {
      * Inflate the Item View
      *
      * @param status ItemStatus
-     * @return View
+     * @return ItemHolder of the inflated view
      */
-    private View getTabView(ItemStatus status) {
+    private ItemHolder getTabView(ItemStatus status) {
 
         LinearLayout linearLayout = new LinearLayout(getContext());
         LinearLayout.LayoutParams params = new LinearLayout.LayoutParams(ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT);
@@ -240,10 +245,17 @@ public class TabLayoutBuilder extends XTabLayout {
         ImageView img = (ImageView) inflate.findViewById(R.id.layout_tab_img);
         TextView text = (TextView) inflate.findViewById(R.id.layout_tab_text);
 
-        if (status.getNormalResId() == 0) {
-            img.setImageResource(status.getDrawableSelectorId());
+        // Both states are loaded now, selection changes only flip the selected state
+        if (status.isTinted()) {
+            img.setImageDrawable(mIconCache.getTintedDrawable(getContext(),
+                    status.getDrawableSelectorId(), status.getNormalTitleColor(),
+                    status.getSelectedTitleColor()));
+        } else if (status.getNormalResId() == 0) {
+            img.setImageDrawable(mIconCache.getDrawable(getContext(),
+                    status.getDrawableSelectorId()));
         } else {
-            img.setImageResource(status.getNormalResId());
+            img.setImageDrawable(mIconCache.getStateDrawable(getContext(),
+                    status.getNormalResId(), status.getSelectedResId()));
         }
 
         text.setText(status.getTitle());
@@ -256,7 +268,7 @@ public class TabLayoutBuilder extends XTabLayout {
         params.bottomMargin = dpToPx(mBottomMargin);
         inflate.setLayoutParams(params);
 
-        return inflate;
+        return new ItemHolder(inflate, text);
     }
 
 }
@@ -0,0 +1,127 @@
+package com.bug95.tablayout;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.v4.util.LruCache;
+import android.text.Layout;
+import android.text.TextPaint;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures tab titles on a background thread, ahead of the first layout of their tabs.
+ * <p>
+ * Measuring a title shapes its glyphs, which is the expensive part of measuring a tab. The
+ * framework keeps shaped words in a process wide cache, so once a title has been measured here
+ * the tab view's own text measurement mostly hits that cache. We also keep the single line widths
+ * of each title, which let a tab view pick its text size before it is first measured. Titles are
+ * measured and looked up as the tab views show them, with the text transformation applied.
+ * <p>
+ * Results are tied to the text appearance and sizes they were measured with. When those change,
+ * the results are stale and ignored, and the tabs are measured synchronously as before. Apart
+ * from the background work itself, this class must only be used from the main thread.
+ */
+class TabTextPrecomputer {
+
+    /**
+     * The single line widths of a title, at the regular and the multi-line tab text size.
+     */
+    static final class Metrics {
+        final float mWidth;
+        final float mMultiLineWidth;
+
+        Metrics(float width, float multiLineWidth) {
+            mWidth = width;
+            mMultiLineWidth = multiLineWidth;
+        }
+    }
+
+    private static final int MAX_SIZE = 512;
+
+    private static final Handler sMainHandler = new Handler(Looper.getMainLooper());
+
+    private final LruCache<String, Metrics> mMetrics = new LruCache<>(MAX_SIZE);
+
+    private int mTextAppearance;
+    private float mTextSize;
+    private float mMultiLineTextSize;
+    // Bumped whenever the inputs change, so that results still in flight are dropped
+    private int mGeneration;
+
+    /**
+     * Starts measuring {@code titles} on a background thread. The results are committed on the
+     * main thread once they are all done.
+     *
+     * @param paint A paint set up from the tab text appearance, which is owned by this call from
+     *              now on
+     */
+    void precompute(List<? extends CharSequence> titles, final TextPaint paint,
+                    int textAppearance, final float textSize, final float multiLineTextSize) {
+        if (textAppearance != mTextAppearance || textSize != mTextSize
+                || multiLineTextSize != mMultiLineTextSize) {
+            mTextAppearance = textAppearance;
+            mTextSize = textSize;
+            mMultiLineTextSize = multiLineTextSize;
+            mGeneration++;
+            mMetrics.evictAll();
+        }
+
+        // Take a copy, the list and the titles may change once we return
+        final ArrayList<String> pending = new ArrayList<>(titles.size());
+        for (int i = 0, count = titles.size(); i < count; i++) {
+            final CharSequence title = titles.get(i);
+            if (title != null && title.length() > 0 && mMetrics.get(title.toString()) == null) {
+                pending.add(title.toString());
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        final int generation = mGeneration;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Metrics[] results = new Metrics[pending.size()];
+                for (int i = 0; i < results.length; i++) {
+                    final String title = pending.get(i);
+                    paint.setTextSize(textSize);
+                    final float width = Layout.getDesiredWidth(title, paint);
+                    paint.setTextSize(multiLineTextSize);
+                    final float multiLineWidth = Layout.getDesiredWidth(title, paint);
+                    results[i] = new Metrics(width, multiLineWidth);
+                }
+
+                sMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != mGeneration) {
+                            // The text appearance changed while we were measuring
+                            return;
+                        }
+                        for (int i = 0; i < results.length; i++) {
+                            mMetrics.put(pending.get(i), results[i]);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Returns the metrics of {@code text}, or null if it hasn't been measured with the given
+     * text appearance and sizes.
+     */
+    @Nullable
+    Metrics get(@Nullable CharSequence text, int textAppearance, float textSize,
+                float multiLineTextSize) {
+        if (text == null || textAppearance != mTextAppearance || textSize != mTextSize
+                || multiLineTextSize != mMultiLineTextSize) {
+            return null;
+        }
+        return mMetrics.get(text.toString());
+    }
+}
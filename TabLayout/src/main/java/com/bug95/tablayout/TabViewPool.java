@@ -0,0 +1,204 @@
+package com.bug95.tablayout;
+
+import android.content.Context;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * Keeps tab views which are no longer bound to a tab, so that new tabs can reuse them rather
+ * than inflating their own. Each {@link XTabLayout} has a pool of its own by default, and
+ * several tab layouts can share one with {@link XTabLayout#setTabViewPool(TabViewPool)}, e.g.
+ * the tab bars of the rows of a list.
+ * <p>
+ * Views are kept per view type, up to a limit which can be set with
+ * {@link #setMaxPooledViews(int, int)}. Within that limit the pool sizes itself to the demand
+ * it sees: it grows whenever a tab layout has to create a view because the pool was empty, and
+ * shrinks again when views sit unused for a while. Views are only handed to tab layouts with
+ * the context they were created with.
+ * <p>
+ * A pool must only be used from the main thread, and shouldn't outlive the contexts of the
+ * tab layouts using it.
+ */
+public class TabViewPool {
+
+    /**
+     * View type of tab views which use the tab's custom view or inflated icon and text views.
+     */
+    public static final int VIEW_TYPE_DEFAULT = 0;
+
+    /**
+     * View type of tab views which draw their icon and text, see
+     * {@link XTabLayout#setFlatTabViewsEnabled(boolean)}.
+     */
+    public static final int VIEW_TYPE_FLAT = 1;
+
+    private static final int VIEW_TYPE_COUNT = 2;
+
+    // The number of views each type holds before it has seen any demand
+    private static final int DEFAULT_CAPACITY = 12;
+    private static final int DEFAULT_MAX_POOLED_VIEWS = 64;
+    // The number of acquire and release calls after which a type looks at its unused views
+    private static final int DEMAND_WINDOW = 128;
+
+    private static class ScrapData {
+        final ArrayList<XTabLayout.TabView> mScrap = new ArrayList<>();
+        int mMaxPooledViews = DEFAULT_MAX_POOLED_VIEWS;
+        int mCapacity = DEFAULT_CAPACITY;
+
+        // The fewest pooled views over the current window, which is the number never used in it
+        int mMinPooledViews;
+        int mWindowOperations;
+    }
+
+    private final ScrapData[] mScrapData = new ScrapData[VIEW_TYPE_COUNT];
+
+    private long mHitCount;
+    private long mMissCount;
+
+    public TabViewPool() {
+        for (int i = 0; i < VIEW_TYPE_COUNT; i++) {
+            mScrapData[i] = new ScrapData();
+        }
+    }
+
+    /**
+     * Sets the most views of the given type which this pool holds. Views beyond the new limit
+     * are dropped.
+     *
+     * @param viewType {@link #VIEW_TYPE_DEFAULT} or {@link #VIEW_TYPE_FLAT}
+     * @param max      the most views to hold, 0 to not pool views of that type
+     */
+    public void setMaxPooledViews(int viewType, int max) {
+        if (max < 0) {
+            throw new IllegalArgumentException("max must be >= 0");
+        }
+        final ScrapData data = getScrapData(viewType);
+        data.mMaxPooledViews = max;
+        data.mCapacity = Math.min(data.mCapacity, max);
+        trim(data);
+    }
+
+    /**
+     * Returns the most views of the given type which this pool holds.
+     *
+     * @see #setMaxPooledViews(int, int)
+     */
+    public int getMaxPooledViews(int viewType) {
+        return getScrapData(viewType).mMaxPooledViews;
+    }
+
+    /**
+     * Returns the number of views of the given type which this pool currently holds.
+     */
+    public int getPooledViewCount(int viewType) {
+        return getScrapData(viewType).mScrap.size();
+    }
+
+    /**
+     * Returns the number of times a tab layout took a view from this pool.
+     */
+    public long getHitCount() {
+        return mHitCount;
+    }
+
+    /**
+     * Returns the number of times a tab layout found no view to reuse in this pool, and had
+     * to create one.
+     */
+    public long getMissCount() {
+        return mMissCount;
+    }
+
+    /**
+     * Drops all pooled views and forgets the demand seen so far. The hit and miss counts are
+     * kept.
+     */
+    public void clear() {
+        for (ScrapData data : mScrapData) {
+            data.mScrap.clear();
+            data.mCapacity = Math.min(DEFAULT_CAPACITY, data.mMaxPooledViews);
+            data.mMinPooledViews = 0;
+            data.mWindowOperations = 0;
+        }
+    }
+
+    /**
+     * Returns a view of the given type created with {@code context}, or null if there is none.
+     */
+    @Nullable
+    XTabLayout.TabView acquire(int viewType, Context context) {
+        final ScrapData data = getScrapData(viewType);
+        final ArrayList<XTabLayout.TabView> scrap = data.mScrap;
+        // Views are usually all from the same context, so this finds one on the first try
+        for (int i = scrap.size() - 1; i >= 0; i--) {
+            if (scrap.get(i).getContext() == context) {
+                final XTabLayout.TabView tabView = scrap.remove(i);
+                mHitCount++;
+                data.mMinPooledViews = Math.min(data.mMinPooledViews, scrap.size());
+                onOperation(data);
+                return tabView;
+            }
+        }
+
+        // Whoever had to create a view will likely give it back, so make room for it
+        mMissCount++;
+        data.mCapacity = Math.min(data.mCapacity + 1, data.mMaxPooledViews);
+        data.mMinPooledViews = 0;
+        onOperation(data);
+        return null;
+    }
+
+    /**
+     * Adds an unbound view of the given type to the pool.
+     *
+     * @return false if the pool is full, in which case the view is dropped
+     */
+    boolean release(XTabLayout.TabView tabView, int viewType) {
+        final ScrapData data = getScrapData(viewType);
+        final boolean pooled = data.mScrap.size() < data.mCapacity;
+        if (pooled) {
+            data.mScrap.add(tabView);
+        }
+        onOperation(data);
+        return pooled;
+    }
+
+    /**
+     * Lets the given type hold at least {@code count} views, within its limit.
+     */
+    void ensureCapacity(int viewType, int count) {
+        final ScrapData data = getScrapData(viewType);
+        data.mCapacity = Math.max(data.mCapacity, Math.min(count, data.mMaxPooledViews));
+    }
+
+    private void onOperation(ScrapData data) {
+        if (++data.mWindowOperations < DEMAND_WINDOW) {
+            return;
+        }
+        // Views which stayed in the pool for the whole window weren't needed. Let go of half of
+        // them, so that a pool which was sized for a burst shrinks back over a few windows
+        final int unused = data.mMinPooledViews;
+        if (unused > 1) {
+            data.mCapacity = Math.max(Math.min(DEFAULT_CAPACITY, data.mMaxPooledViews),
+                    data.mCapacity - unused / 2);
+            trim(data);
+        }
+        data.mWindowOperations = 0;
+        data.mMinPooledViews = data.mScrap.size();
+    }
+
+    private static void trim(ScrapData data) {
+        final ArrayList<XTabLayout.TabView> scrap = data.mScrap;
+        for (int i = scrap.size() - 1; i >= data.mCapacity; i--) {
+            scrap.remove(i);
+        }
+    }
+
+    private ScrapData getScrapData(int viewType) {
+        if (viewType < 0 || viewType >= VIEW_TYPE_COUNT) {
+            throw new IllegalArgumentException("Unknown view type: " + viewType);
+        }
+        return mScrapData[viewType];
+    }
+}
@@ -0,0 +1,132 @@
+package com.bug95.tablayout;
+
+import android.support.v4.util.Pools;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A thread safe object pool which doesn't lock.
+ * <p>
+ * Each thread has a small cache of its own, which it uses without any synchronization. When a
+ * thread's cache is full, half of it is moved to a shared overflow area, where other threads
+ * can take from when their own cache runs dry. The overflow area is a fixed array of slots
+ * which are claimed and emptied with compare-and-set, so it never allocates and an instance
+ * can't be handed out twice. Instances beyond both limits are dropped.
+ * <p>
+ * At most {@code localSize} instances are held per thread which uses the pool, and
+ * {@code sharedSize} across all of them. A thread's cache goes away with the thread.
+ */
+class ThreadCachingPool<T> implements Pools.Pool<T> {
+
+    private static final class LocalCache {
+        final Object[] mItems;
+        int mSize;
+
+        LocalCache(int size) {
+            mItems = new Object[size];
+        }
+    }
+
+    private final int mLocalSize;
+    private final AtomicReferenceArray<T> mShared;
+    private final ThreadLocal<LocalCache> mLocal = new ThreadLocal<LocalCache>() {
+        @Override
+        protected LocalCache initialValue() {
+            return new LocalCache(mLocalSize);
+        }
+    };
+
+    /**
+     * @param localSize  the most instances held for each thread
+     * @param sharedSize the most instances held in the overflow area shared by all threads
+     */
+    ThreadCachingPool(int localSize, int sharedSize) {
+        if (localSize <= 0 || sharedSize <= 0) {
+            throw new IllegalArgumentException("The pool sizes must be > 0");
+        }
+        mLocalSize = localSize;
+        mShared = new AtomicReferenceArray<>(sharedSize);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T acquire() {
+        final LocalCache local = mLocal.get();
+        if (local.mSize > 0) {
+            final int last = --local.mSize;
+            final T instance = (T) local.mItems[last];
+            local.mItems[last] = null;
+            return instance;
+        }
+        for (int i = 0, size = mShared.length(); i < size; i++) {
+            // Check before swapping, so that we only write to slots which are in use
+            if (mShared.get(i) != null) {
+                final T instance = mShared.getAndSet(i, null);
+                if (instance != null) {
+                    return instance;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public boolean release(T instance) {
+        final LocalCache local = mLocal.get();
+        if (isInPool(local, instance)) {
+            throw new IllegalStateException("Already in the pool!");
+        }
+        if (local.mSize == mLocalSize) {
+            // Make room, and let other threads have what we hold on to
+            drain(local, mLocalSize / 2 + 1);
+        }
+        local.mItems[local.mSize++] = instance;
+        return true;
+    }
+
+    /**
+     * Moves the oldest {@code count} instances of the given cache to the shared overflow area,
+     * dropping those which don't fit.
+     */
+    @SuppressWarnings("unchecked")
+    private void drain(LocalCache local, int count) {
+        final Object[] items = local.mItems;
+        count = Math.min(count, local.mSize);
+        for (int i = 0; i < count; i++) {
+            offerShared((T) items[i]);
+        }
+        System.arraycopy(items, count, items, 0, local.mSize - count);
+        for (int i = local.mSize - count; i < local.mSize; i++) {
+            items[i] = null;
+        }
+        local.mSize -= count;
+    }
+
+    private boolean offerShared(T instance) {
+        for (int i = 0, size = mShared.length(); i < size; i++) {
+            if (mShared.get(i) == null && mShared.compareAndSet(i, null, instance)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns whether the instance is in this thread's cache or in the shared overflow area.
+     * Other threads' caches aren't visible to us, but an instance is only released to the pool
+     * by the thread which owns it.
+     */
+    private boolean isInPool(LocalCache local, T instance) {
+        for (int i = 0; i < local.mSize; i++) {
+            if (local.mItems[i] == instance) {
+                return true;
+            }
+        }
+        for (int i = 0, size = mShared.length(); i < size; i++) {
+            if (mShared.get(i) == instance) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -18,8 +18,6 @@ package com.bug95.tablayout;
 
 import android.graphics.PorterDuff;
 import android.os.Build;
-import android.view.View;
-import android.view.ViewGroup;
 
 class ViewUtils {
 
@@ -58,15 +56,4 @@ class ViewUtils {
         }
     }
 
-    /**
-     * Set the margins of view, in pixels.
-     */
-    static void setMargins (View view, int left, int top, int right, int bottom) {
-        if (view.getLayoutParams() instanceof ViewGroup.MarginLayoutParams) {
-            ViewGroup.MarginLayoutParams p = (ViewGroup.MarginLayoutParams) view.getLayoutParams();
-            p.setMargins(left, top, right, bottom);
-            view.requestLayout();
-        }
-    }
-
 }
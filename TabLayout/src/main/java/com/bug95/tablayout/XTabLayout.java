@@ -27,6 +27,10 @@ import android.graphics.Paint;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.SystemClock;
 import android.support.annotation.ColorInt;
 import android.support.annotation.DrawableRes;
 import android.support.annotation.IntDef;
@@ -35,6 +39,8 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.RestrictTo;
 import android.support.annotation.StringRes;
+import android.support.v4.app.FragmentPagerAdapter;
+import android.support.v4.os.TraceCompat;
 import android.support.v4.util.Pools;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.view.PagerAdapter;
@@ -46,17 +52,20 @@ import android.support.v4.widget.TextViewCompat;
 import android.support.v7.app.ActionBar;
 import android.support.v7.content.res.AppCompatResources;
 import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
 import android.text.TextUtils;
+import android.text.method.TransformationMethod;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.util.TypedValue;
+import android.view.Display;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.SoundEffectConstants;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewParent;
-import android.view.ViewTreeObserver;
 import android.view.accessibility.AccessibilityEvent;
 import android.view.accessibility.AccessibilityNodeInfo;
 import android.widget.Button;
@@ -71,8 +80,12 @@ import android.widget.Toast;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 
 import static android.support.annotation.RestrictTo.Scope.LIBRARY_GROUP;
 import static android.support.v4.view.ViewPager.SCROLL_STATE_DRAGGING;
@@ -87,12 +100,37 @@ public class XTabLayout extends HorizontalScrollView {
     private static final int INVALID_WIDTH = -1;
     private static final int DEFAULT_HEIGHT = 48; // dps
     private static final int TAB_MIN_WIDTH_MARGIN = 56; //dps
+    private static final int FLAT_TAB_ICON_SIZE = 24; // dps, as in design_layout_tab_icon
     static final int FIXED_WRAP_GUTTER_MIN = 16; //dps
     static final int MOTION_NON_ADJACENT_OFFSET = 24;
 
     private static final int ANIMATION_DURATION = 300;
 
-    private static final Pools.Pool<Tab> sTabPool = new Pools.SynchronizedPool<>(16);
+    private static final long TAB_VIEW_PREWARM_BUDGET = 4; // ms per idle callback
+
+    private static final String TRACE_TAB_LAYOUT_MEASURE = "XTabLayout.onMeasure";
+    private static final String TRACE_CONTENT_ROOT_MEASURE = "XTabLayout.ContentRoot.onMeasure";
+    private static final String TRACE_STRIP_MEASURE = "XTabLayout.SlidingTabStrip.onMeasure";
+    private static final String TRACE_STRIP_LAYOUT = "XTabLayout.SlidingTabStrip.onLayout";
+    private static final String TRACE_STRIP_DRAW = "XTabLayout.SlidingTabStrip.draw";
+    private static final String TRACE_TAB_VIEW_MEASURE = "XTabLayout.TabView.onMeasure";
+    private static final String TRACE_TAB_VIEW_UPDATE = "XTabLayout.TabView.update";
+    private static final String TRACE_DISPATCH_SELECTED = "XTabLayout.dispatchTabSelected";
+    private static final String TRACE_DISPATCH_UNSELECTED = "XTabLayout.dispatchTabUnselected";
+    private static final String TRACE_DISPATCH_RESELECTED = "XTabLayout.dispatchTabReselected";
+    private static final int MAX_TRACE_SECTION_NAME_LENGTH = 127;
+
+    // Whether we emit trace sections, see setTraceEnabled()
+    static boolean sTraceEnabled;
+
+    // Tabs can be created on any thread, see ThreadCachingPool
+    private static final Pools.Pool<Tab> sTabPool = new ThreadCachingPool<>(8, 16);
+
+    private static final Runnable NO_OP = new Runnable() {
+        @Override
+        public void run() {
+        }
+    };
 
     /**
      * Scrollable tabs display a subset of tabs at any given moment, and can contain longer tab
@@ -182,6 +220,26 @@ public class XTabLayout extends HorizontalScrollView {
         public void onTabReselected(Tab tab);
     }
 
+    /**
+     * Callback interface invoked with the timings of each tab switch, see
+     * {@link #setOnTabSwitchMetricsListener(OnTabSwitchMetricsListener)}.
+     */
+    public interface OnTabSwitchMetricsListener {
+
+        /**
+         * Called once the indicator has settled on a newly selected tab.
+         *
+         * @param tab                   The tab that was switched to
+         * @param tapToFirstFrameMillis The time from the tap on the tab, or from the call to
+         *                              {@link Tab#select()}, to the first frame of the animation
+         * @param animationMillis       The time from the first to the last frame of the animation
+         * @param frameCount            The number of frames rendered
+         * @param missedFrameCount      The number of frames which missed the vsync deadline
+         */
+        public void onTabSwitchMetrics(Tab tab, long tapToFirstFrameMillis, long animationMillis,
+                                       int frameCount, int missedFrameCount);
+    }
+
     private Context mContext;
     private final ArrayList<Tab> mTabs = new ArrayList<>();
     private Tab mSelectedTab;
@@ -212,23 +270,75 @@ public class XTabLayout extends HorizontalScrollView {
     int mMode;
     int mCenterTabWidth;
     boolean mHasCenterTab;
+    // The view shown in the slot between the two middle tabs, see prepareForCenterTab()
+    private View mCenterTab;
 
     private OnTabSelectedListener mSelectedListener;
     private final ArrayList<OnTabSelectedListener> mSelectedListeners = new ArrayList<>();
     private OnTabSelectedListener mCurrentVpSelectedListener;
 
-    private ValueAnimatorCompat mScrollAnimator;
+    // Drives both the scroll and the indicator when animating to a tab, see animateToTab()
+    private ValueAnimatorCompat mTabTransitionAnimator;
+    private int mTransitionStartScrollX;
+    private float mTransitionStartFraction; // the fraction the scroll was at its start value
+    private int mTransitionTargetScrollX;
+    private int mTransitionTargetPosition;
+    private boolean mTransitionAnimatesScroll;
+
+    // Timings of the running tab transition, see setOnTabSwitchMetricsListener()
+    private OnTabSwitchMetricsListener mSwitchMetricsListener;
+    long mSwitchTapTime = -1; // set by TabView.performClick(), in nanos
+    private boolean mSwitchMeasuring;
+    private Tab mSwitchTab;
+    private long mSwitchStartTime;
+    private long mSwitchFirstFrameTime;
+    private long mSwitchLastFrameTime;
+    private long mSwitchFrameInterval;
+    private int mSwitchFrameCount;
+    private int mSwitchMissedFrameCount;
+
+    // Counts measure and layout passes while set, see setLayoutPassCountingEnabled()
+    LayoutPassStats mLayoutPassStats;
+    private boolean mLayoutPassOverlayEnabled;
+    private Paint mLayoutPassOverlayPaint;
 
     ViewPager mViewPager;
     private PagerAdapter mPagerAdapter;
+    // Whether the adapter's pages have ids other than their positions, see getAdapterKey()
+    private boolean mPagerAdapterHasStableIds;
     private DataSetObserver mPagerAdapterObserver;
     private TabLayoutOnPageChangeListener mPageChangeListener;
     private AdapterChangeListener mAdapterChangeListener;
     private boolean mSetupViewPagerImplicitly;
-    private boolean mHasCenterButton;
-
-    // Pool we use as a simple RecyclerBin
-    private final Pools.Pool<TabView> mTabViewPool = new Pools.SimplePool<>(12);
+    private boolean mTabViewVirtualizationEnabled;
+    private boolean mIncrementalPagerSyncEnabled;
+    private TabTextPrecomputer mTextPrecomputer;
+    // The number of tabs with both an icon and text, see getDefaultHeight()
+    private int mIconAndTextTabCount;
+
+    // Tab changes made between beginBatch() and commitBatch()
+    private int mBatchDepth;
+    // Tab positions are renumbered lazily after tabs are added or removed, see Tab.getPosition()
+    private int mDirtyTabPositionsFrom = -1; // the first tab whose position is stale, or -1
+    private boolean mBatchTabsChanged;
+    private boolean mBatchHasSelection;
+    private Tab mBatchSelection;
+    private final ArrayList<Tab> mBatchUpdatedTabs = new ArrayList<>();
+    private boolean mFlatTabViewsEnabled;
+    // Resolves the tab text appearance for code which doesn't use a TextView, see getTabTextProbe()
+    private TextView mTabTextProbe;
+
+    // The tab view currently shown as selected, see setSelectedTabView()
+    private View mSelectedTabView;
+    private int mSelectedTabViewPosition = Tab.INVALID_POSITION;
+
+    // Pool we use as a simple RecyclerBin, possibly shared with other tab layouts
+    private TabViewPool mTabViewPool = new TabViewPool();
+
+    // Builds tab views into the pool during idle time, see prewarmTabViews()
+    private int mTabViewPrewarmCount;
+    private MessageQueue.IdleHandler mTabViewPrewarmer;
+    private Handler mTabViewPrewarmHandler;
 
     public XTabLayout(Context context) {
         this(context, null);
@@ -256,6 +366,9 @@ public class XTabLayout extends HorizontalScrollView {
         mTabStrip = new SlidingTabStrip(context);
         mContentRoot.addView(mTabStrip, 0, new LayoutParams(
                 LayoutParams.MATCH_PARENT, LayoutParams.MATCH_PARENT));
+        // And the indicator over it, which the strip moves along its bottom edge
+        mContentRoot.addView(mTabStrip.mIndicatorView, new LayoutParams(
+                1, 0, Gravity.LEFT | Gravity.BOTTOM));
 
         TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.XTabLayout,
                 defStyleAttr, R.style.Widget_Design_xTabLayout);
@@ -361,7 +474,7 @@ public class XTabLayout extends HorizontalScrollView {
     void setScrollPosition(int position, float positionOffset, boolean updateSelectedText,
                            boolean updateIndicatorPosition) {
         final int roundedPosition = Math.round(position + positionOffset);
-        if (roundedPosition < 0 || roundedPosition >= mTabStrip.getChildCount()) {
+        if (roundedPosition < 0 || roundedPosition >= mTabStrip.getTabCount()) {
             return;
         }
 
@@ -370,11 +483,13 @@ public class XTabLayout extends HorizontalScrollView {
             mTabStrip.setIndicatorPositionFromTabPosition(position, positionOffset);
         }
 
-        // Now update the scroll position, canceling any running animation
-        if (mScrollAnimator != null && mScrollAnimator.isRunning()) {
-            mScrollAnimator.cancel();
+        // Now update the scroll position, taking it over from any running animation
+        mTransitionAnimatesScroll = false;
+        final int scrollX = calculateScrollXForTab(position, positionOffset);
+        if (scrollX != getScrollX()) {
+            // This runs for every ViewPager frame, so skip the call when we're already there
+            scrollTo(scrollX, 0);
         }
-        scrollTo(calculateScrollXForTab(position, positionOffset), 0);
 
         // Update the 'selected state' view as we scroll, if enabled
         if (updateSelectedText) {
@@ -431,13 +546,98 @@ public class XTabLayout extends HorizontalScrollView {
             throw new IllegalArgumentException("Tab belongs to a different TabLayout.");
         }
         configureTab(tab, position);
-        addTabView(tab);
+        if (mBatchDepth == 0) {
+            addTabView(tab);
+        }
 
         if (setSelected) {
             tab.select();
         }
     }
 
+    /**
+     * Starts a batch of tab changes. Until the matching {@link #commitBatch()}, adding, removing
+     * and changing tabs only updates the list of tabs. The tab views, the tab positions and the
+     * selection are brought up to date once, when the batch is committed, with a single layout
+     * request, and the tab selected listeners are only told about the final selection.
+     * <p>
+     * The existing tab views are left as they are until the commit, so commit a batch before
+     * returning control to the framework. Batches can be nested, in which case the outermost
+     * commit applies the changes.
+     *
+     * @see #commitBatch()
+     */
+    public void beginBatch() {
+        mBatchDepth++;
+    }
+
+    /**
+     * Applies the tab changes made since the matching {@link #beginBatch()}.
+     *
+     * @throws IllegalStateException if there is no batch to commit
+     */
+    public void commitBatch() {
+        if (mBatchDepth == 0) {
+            throw new IllegalStateException("commitBatch() called without beginBatch()");
+        }
+        if (--mBatchDepth > 0) {
+            return;
+        }
+
+        // One renumbering pass
+        ensureTabPositions();
+
+        // Then the content of tabs which changed, and one pass over the strip
+        for (int i = 0, count = mBatchUpdatedTabs.size(); i < count; i++) {
+            final Tab tab = mBatchUpdatedTabs.get(i);
+            tab.mBatchUpdatePending = false;
+            if (tab.mParent == this) {
+                tab.updateView();
+            }
+        }
+        mBatchUpdatedTabs.clear();
+        if (mBatchTabsChanged) {
+            mBatchTabsChanged = false;
+            if (mTabStrip.isVirtualizing()) {
+                mTabStrip.onTabsChanged();
+            } else {
+                mTabStrip.setTabViews();
+            }
+        }
+
+        // Finally the selection, which dispatches to the listeners
+        final Tab selection = mBatchHasSelection ? mBatchSelection : mSelectedTab;
+        mBatchHasSelection = false;
+        mBatchSelection = null;
+        if (selection != mSelectedTab) {
+            selectTab(selection);
+        } else if (mSelectedTab != null
+                && mSelectedTab.getPosition() != mTabStrip.mSelectedPosition) {
+            // Keep the indicator under the selected tab, wherever it has moved to
+            setScrollPosition(mSelectedTab.getPosition(), 0f, true);
+        }
+    }
+
+    /**
+     * Brings the positions of the tabs up to date, after tabs were added or removed.
+     */
+    void ensureTabPositions() {
+        final int from = mDirtyTabPositionsFrom;
+        if (from >= 0) {
+            mDirtyTabPositionsFrom = -1;
+            for (int i = from, count = mTabs.size(); i < count; i++) {
+                mTabs.get(i).setPosition(i);
+            }
+        }
+    }
+
+    private void invalidateTabPositions(int from) {
+        if (from < mTabs.size()) {
+            mDirtyTabPositionsFrom = mDirtyTabPositionsFrom < 0
+                    ? from : Math.min(mDirtyTabPositionsFrom, from);
+        }
+    }
+
     private void addTabFromItemView(@NonNull XTabItem item) {
         final Tab tab = newTab();
         if (item.mText != null) {
@@ -506,6 +706,105 @@ public class XTabLayout extends HorizontalScrollView {
         mSelectedListeners.clear();
     }
 
+    /**
+     * Sets whether tab layouts emit named sections to the system trace, around their measure,
+     * layout and draw passes and around the dispatch of selection changes to each listener.
+     * This is off by default, in which case each of those costs a field read. Trace sections
+     * need API 18 or later.
+     *
+     * @param enabled whether to emit trace sections
+     */
+    public static void setTraceEnabled(boolean enabled) {
+        sTraceEnabled = enabled;
+    }
+
+    /**
+     * Sets whether to count how many times the views making up this layout are measured and
+     * laid out in each frame. The counts of the last frame are available from
+     * {@link #getLayoutPassStats()}. This is meant for debug and QA builds, to catch views
+     * being measured more than once per frame.
+     *
+     * @param enabled whether to count measure and layout passes
+     * @see #setLayoutPassOverlayEnabled(boolean)
+     */
+    public void setLayoutPassCountingEnabled(boolean enabled) {
+        if (enabled && mLayoutPassStats == null) {
+            mLayoutPassStats = new LayoutPassStats();
+        } else if (!enabled) {
+            mLayoutPassStats = null;
+            setLayoutPassOverlayEnabled(false);
+        }
+    }
+
+    /**
+     * Returns whether measure and layout passes are counted.
+     *
+     * @see #setLayoutPassCountingEnabled(boolean)
+     */
+    public boolean isLayoutPassCountingEnabled() {
+        return mLayoutPassStats != null;
+    }
+
+    /**
+     * Returns the measure and layout passes of the last frame, or null if they aren't counted.
+     * The returned instance is updated at the end of every frame.
+     *
+     * @see #setLayoutPassCountingEnabled(boolean)
+     */
+    @Nullable
+    public LayoutPassStats getLayoutPassStats() {
+        return mLayoutPassStats;
+    }
+
+    /**
+     * Sets whether to draw the measure and layout passes of the last frame over the tab strip.
+     * The overlay reads {@code M a/b/c/d  L a/b/c/d}, giving the measures and layouts of this
+     * layout, its content root, the tab strip and the busiest tab view. Enabling the overlay
+     * enables counting as well.
+     *
+     * @param enabled whether to draw the overlay
+     */
+    public void setLayoutPassOverlayEnabled(boolean enabled) {
+        if (enabled) {
+            setLayoutPassCountingEnabled(true);
+            if (mLayoutPassOverlayPaint == null) {
+                mLayoutPassOverlayPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+                mLayoutPassOverlayPaint.setTextSize(dpToPx(10));
+            }
+        }
+        if (mLayoutPassOverlayEnabled != enabled) {
+            mLayoutPassOverlayEnabled = enabled;
+            mTabStrip.invalidate();
+        }
+    }
+
+    void onMeasurePass(int view) {
+        if (mLayoutPassStats != null) {
+            mLayoutPassStats.mMeasures[view]++;
+        }
+    }
+
+    void onLayoutPass(int view) {
+        if (mLayoutPassStats != null) {
+            mLayoutPassStats.mLayouts[view]++;
+        }
+    }
+
+    /**
+     * Set a listener which is told how long each tab switch takes, from the tap on a tab to the
+     * indicator settling on it. Only switches which animate the indicator or the scroll
+     * position are reported. Nothing is measured while no listener is set.
+     *
+     * @param listener the listener to notify, or null to stop measuring
+     */
+    public void setOnTabSwitchMetricsListener(@Nullable OnTabSwitchMetricsListener listener) {
+        mSwitchMetricsListener = listener;
+        if (listener == null) {
+            mSwitchMeasuring = false;
+            mSwitchTab = null;
+        }
+    }
+
     /**
      * Create and return a new {@link Tab}. You need to manually add this using
      * {@link #addTab(Tab)} or a related method.
@@ -520,7 +819,8 @@ public class XTabLayout extends HorizontalScrollView {
             tab = new Tab();
         }
         tab.mParent = this;
-        tab.mView = createTabView(tab);
+        // A virtualizing strip binds TabViews lazily, once the tab scrolls into view
+        tab.mView = mTabStrip.isVirtualizing() ? null : createTabView(tab);
         return tab;
     }
 
@@ -571,8 +871,16 @@ public class XTabLayout extends HorizontalScrollView {
      * @param position Position of the tab to remove
      */
     public void removeTabAt(int position) {
-        final int selectedTabPosition = mSelectedTab != null ? mSelectedTab.getPosition() : 0;
-        removeTabViewAt(position);
+        // Compare the tabs rather than their positions, which may be stale within a batch
+        final Tab selectedTab = mBatchHasSelection ? mBatchSelection : mSelectedTab;
+        final boolean removingSelectedTab = selectedTab != null
+                ? mTabs.get(position) == selectedTab
+                : position == 0;
+        if (mBatchDepth == 0) {
+            removeTabViewAt(position);
+        } else {
+            mBatchTabsChanged = true;
+        }
 
         final Tab removedTab = mTabs.remove(position);
         if (removedTab != null) {
@@ -580,12 +888,15 @@ public class XTabLayout extends HorizontalScrollView {
             sTabPool.release(removedTab);
         }
 
-        final int newTabCount = mTabs.size();
-        for (int i = position; i < newTabCount; i++) {
-            mTabs.get(i).setPosition(i);
+        // The tabs after it have moved down, they're renumbered when a position is next read
+        invalidateTabPositions(position);
+        if (mSelectedTabViewPosition > position) {
+            mSelectedTabViewPosition--;
+        } else if (mSelectedTabViewPosition == position) {
+            clearSelectedTabView();
         }
 
-        if (selectedTabPosition == position) {
+        if (removingSelectedTab) {
             selectTab(mTabs.isEmpty() ? null : mTabs.get(Math.max(0, position - 1)));
         }
     }
@@ -594,10 +905,9 @@ public class XTabLayout extends HorizontalScrollView {
      * Remove all tabs from the action bar and deselect the current tab.
      */
     public void removeAllTabs() {
-        // Remove all the views
-        for (int i = mTabStrip.getChildCount() - 1; i >= 0; i--) {
-            removeTabViewAt(i);
-        }
+        // Remove all the views. Even in a batch we do this now, so that the views can be
+        // re-used by the tabs which are added next
+        recycleAllTabViews();
 
         for (final Iterator<Tab> i = mTabs.iterator(); i.hasNext(); ) {
             final Tab tab = i.next();
@@ -607,6 +917,11 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         mSelectedTab = null;
+        clearSelectedTabView();
+        mBatchHasSelection = false;
+        mBatchSelection = null;
+        mDirtyTabPositionsFrom = -1;
+        mBatchTabsChanged |= mBatchDepth > 0;
     }
 
     /**
@@ -641,7 +956,8 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     /**
-     * Set the gravity to use when laying out the tabs.
+     * Set the gravity to use when laying out the tabs. With {@link #GRAVITY_CENTER}, tabs which
+     * don't fit within the layout fill it instead, until they fit again.
      *
      * @param gravity one of {@link #GRAVITY_CENTER} or {@link #GRAVITY_FILL}.
      * @attr ref android.support.design.R.styleable#XTabLayout_tabGravity
@@ -693,6 +1009,182 @@ public class XTabLayout extends HorizontalScrollView {
         setTabTextColors(createColorStateList(normalColor, selectedColor));
     }
 
+    /**
+     * Sets whether {@link #MODE_SCROLLABLE} should only keep tab views for the tabs which
+     * are on screen. When enabled, views are bound from the recycling pool for the visible tabs
+     * plus a margin of half the viewport on each side, and released again as the tabs scroll
+     * away, so the number of live views depends on the viewport width rather than on the tab
+     * count. Tab widths are still measured for every tab, but only when tab content changes.
+     * <p>
+     * This has no effect in {@link #MODE_FIXED}. Note that {@link Tab#getView()} returns
+     * {@code null} for tabs which are currently scrolled out of view.
+     *
+     * @param enabled whether to virtualize the tab views in scrollable mode
+     * @see #isTabViewVirtualizationEnabled()
+     */
+    public void setTabViewVirtualizationEnabled(boolean enabled) {
+        if (mTabViewVirtualizationEnabled != enabled) {
+            mTabViewVirtualizationEnabled = enabled;
+            syncTabViewVirtualization();
+        }
+    }
+
+    /**
+     * Returns whether tab views are virtualized in {@link #MODE_SCROLLABLE}.
+     *
+     * @see #setTabViewVirtualizationEnabled(boolean)
+     */
+    public boolean isTabViewVirtualizationEnabled() {
+        return mTabViewVirtualizationEnabled;
+    }
+
+    /**
+     * Builds tab views ahead of time, so that adding tabs doesn't need to create and inflate
+     * them. Views are built on the main thread while it is idle, a few at a time, until there
+     * are enough for {@code expectedTabCount} tabs. Call this early, e.g. before the data for
+     * the tabs is loaded, since tabs which are added before their views are ready still create
+     * them as usual. Building stops when this layout is detached from its window.
+     * <p>
+     * In {@link #MODE_SCROLLABLE} with tab view virtualization enabled, only the tabs which are
+     * on screen need a view, so there is no point in passing more than that.
+     *
+     * @param expectedTabCount the number of tabs to build views for, or 0 to stop building
+     */
+    public void prewarmTabViews(int expectedTabCount) {
+        // Let the pool hold all of the views, as far as its limit allows
+        mTabViewPool.ensureCapacity(getTabViewType(), expectedTabCount);
+        mTabViewPrewarmCount = expectedTabCount;
+
+        if (!needsTabViewPrewarm()) {
+            stopTabViewPrewarm();
+        } else if (mTabViewPrewarmer == null) {
+            if (mTabViewPrewarmHandler == null) {
+                mTabViewPrewarmHandler = new Handler(Looper.getMainLooper());
+            }
+            mTabViewPrewarmer = new MessageQueue.IdleHandler() {
+                @Override
+                public boolean queueIdle() {
+                    final long deadline = SystemClock.uptimeMillis() + TAB_VIEW_PREWARM_BUDGET;
+                    while (needsTabViewPrewarm() && SystemClock.uptimeMillis() < deadline) {
+                        final TabView tabView = new TabView(XTabLayout.this);
+                        // Inflates the icon and text views, as for a recycled view
+                        tabView.update();
+                        if (!releaseTabView(tabView)) {
+                            // The pool is at its limit
+                            mTabViewPrewarmCount = 0;
+                        }
+                    }
+                    if (!needsTabViewPrewarm()) {
+                        mTabViewPrewarmer = null;
+                        return false;
+                    }
+                    // Idle handlers only run again once a message has been handled, so post an
+                    // empty one to carry on at the next idle time
+                    mTabViewPrewarmHandler.post(NO_OP);
+                    return true;
+                }
+            };
+            Looper.myQueue().addIdleHandler(mTabViewPrewarmer);
+        }
+    }
+
+    /**
+     * Sets the pool which this layout takes tab views from and returns them to. Tab layouts
+     * which show similar tabs, e.g. in the rows of a list, can share a pool so that a view
+     * released by one can be reused by another.
+     *
+     * @param pool the pool to use, or null to use a new pool of our own
+     * @see #getTabViewPool()
+     */
+    public void setTabViewPool(@Nullable TabViewPool pool) {
+        mTabViewPool = pool != null ? pool : new TabViewPool();
+    }
+
+    /**
+     * Returns the pool which this layout takes tab views from and returns them to.
+     *
+     * @see #setTabViewPool(TabViewPool)
+     */
+    @NonNull
+    public TabViewPool getTabViewPool() {
+        return mTabViewPool;
+    }
+
+    /**
+     * Measures the given tab titles with the tab text appearance on a background thread. Call
+     * this ahead of adding a large number of tabs, e.g. as soon as the titles for a pager adapter
+     * are known, so that the text shaping doesn't happen on the main thread during the first
+     * layout of the tabs.
+     * <p>
+     * The results are committed on the main thread once they are ready. Tabs which are measured
+     * before then, or after the text appearance has changed, are measured as usual.
+     *
+     * @param titles the titles of the tabs which are about to be added
+     */
+    public void precomputeTabTexts(@NonNull List<? extends CharSequence> titles) {
+        if (mTextPrecomputer == null) {
+            mTextPrecomputer = new TabTextPrecomputer();
+        }
+        // Measure the text as the tab views show it, e.g. in all caps
+        final TextView probe = getTabTextProbe();
+        final ArrayList<CharSequence> texts = new ArrayList<>(titles.size());
+        for (int i = 0, count = titles.size(); i < count; i++) {
+            texts.add(getDisplayedText(titles.get(i), probe));
+        }
+        mTextPrecomputer.precompute(texts, new TextPaint(probe.getPaint()),
+                mTabTextAppearance, mTabTextSize, mTabTextMultiLineSize);
+    }
+
+    /**
+     * Sets whether tab views draw their icon and text themselves, rather than through an
+     * ImageView and a TextView. This saves two views per tab, along with their inflation,
+     * measure and layout work, which adds up with many tabs or many tab layouts on screen.
+     * Tabs keep their text colors, text sizing and accessibility text in this mode.
+     * <p>
+     * Tabs with a custom view are not affected.
+     *
+     * @param enabled whether tab views should draw their content themselves
+     * @see #isFlatTabViewsEnabled()
+     */
+    public void setFlatTabViewsEnabled(boolean enabled) {
+        if (mFlatTabViewsEnabled != enabled) {
+            mFlatTabViewsEnabled = enabled;
+            updateAllTabs();
+        }
+    }
+
+    /**
+     * Returns whether tab views draw their icon and text themselves.
+     *
+     * @see #setFlatTabViewsEnabled(boolean)
+     */
+    public boolean isFlatTabViewsEnabled() {
+        return mFlatTabViewsEnabled;
+    }
+
+    /**
+     * Returns a text view with the tab text appearance applied, which we use to resolve the
+     * paint and the transformation of tab texts without a text view of their own.
+     */
+    TextView getTabTextProbe() {
+        if (mTabTextProbe == null) {
+            mTabTextProbe = new TextView(getContext());
+            TextViewCompat.setTextAppearance(mTabTextProbe, mTabTextAppearance);
+        }
+        return mTabTextProbe;
+    }
+
+    /**
+     * Returns {@code text} as the given text view shows it, with its transformation, i.e. all
+     * caps, applied.
+     */
+    static CharSequence getDisplayedText(@Nullable CharSequence text, TextView textView) {
+        final TransformationMethod transformation = textView.getTransformationMethod();
+        return !TextUtils.isEmpty(text) && transformation != null
+                ? transformation.getTransformation(text, textView)
+                : text;
+    }
+
     public void prepareForCenterTab(OnClickListener listener) {
         if (mCenterTabWidth == 0) {
             return;
@@ -706,34 +1198,15 @@ public class XTabLayout extends HorizontalScrollView {
         if (mCenterTabWidth == 0) {
             return;
         }
+        if (mCenterTab != null) {
+            mContentRoot.removeView(mCenterTab);
+        }
 
-        ViewTreeObserver vto = mTabStrip.getViewTreeObserver();
-        vto.addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener() {
-            @Override
-            public void onGlobalLayout() {
-                mTabStrip.getViewTreeObserver().removeGlobalOnLayoutListener(this);
-                int mTabStripWidth = mTabStrip.getWidth(); // The width of view, in pixels.
-                int tabsCount = mTabs.size();
-
-                if (mCenterTabWidth == -1) {
-                    mCenterTabWidth = mTabStripWidth / (tabsCount + 1);
-                }
-                doAddCenterTab(centerView, listener);
-            }
-        });
-    }
-
-    private void doAddCenterTab(View centerView, OnClickListener listener) {
-        mHasCenterButton = true;
-        // All tabs have been added into SlidingTabStrip object
-        int tabsCount = mTabs.size();
-        int centerTabIndex1 = (tabsCount / 2) - 1;
-        int centerTabIndex2 = tabsCount / 2;
-        ViewUtils.setMargins(mTabs.get(centerTabIndex1).getView(), 0, 0, mCenterTabWidth / 2, 0);
-        ViewUtils.setMargins(mTabs.get(centerTabIndex2).getView(), mCenterTabWidth / 2, 0, 0, 0);
-
+        // The strip reserves the slot between the two middle tabs while it is measured, and
+        // the content root sizes the center tab to it in the same pass, see reserveCenterSlot()
         LinearLayout centerTab = new LinearLayout(mContext);
-        FrameLayout.LayoutParams frameLayoutParams = new FrameLayout.LayoutParams(mCenterTabWidth, LayoutParams.MATCH_PARENT);
+        FrameLayout.LayoutParams frameLayoutParams = new FrameLayout.LayoutParams(
+                LayoutParams.WRAP_CONTENT, LayoutParams.MATCH_PARENT);
         frameLayoutParams.gravity = Gravity.CENTER_HORIZONTAL|Gravity.BOTTOM;
         centerTab.setLayoutParams(frameLayoutParams);
         centerTab.setOnClickListener(listener);
@@ -743,6 +1216,7 @@ public class XTabLayout extends HorizontalScrollView {
                 ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT);
         centerView.setLayoutParams(linearLayoutParams);
         centerTab.addView(centerView, 0, centerView.getLayoutParams());
+        mCenterTab = centerTab;
     }
 
     public void setupWithViewPager(@Nullable ViewPager viewPager) {
@@ -829,6 +1303,32 @@ public class XTabLayout extends HorizontalScrollView {
         mSetupViewPagerImplicitly = implicitSetup;
     }
 
+    /**
+     * Sets whether changes of the linked {@link PagerAdapter} are applied incrementally.
+     * <p>
+     * By default every {@link PagerAdapter#notifyDataSetChanged()} removes all tabs and
+     * re-creates them from the adapter. When enabled, the current tabs are instead matched with
+     * the new pages, using {@link FragmentPagerAdapter#getItemId(int)} when the adapter is a
+     * {@link FragmentPagerAdapter} and the page titles otherwise. Only inserted, removed, moved
+     * and re-titled tabs are touched; all other tabs keep their views, and the selected tab and
+     * scroll offset are left as they are. As the selected tab is kept, no selection callbacks
+     * are dispatched unless the selection actually changes.
+     *
+     * @param enabled whether to diff the tabs against the adapter on data set changes
+     */
+    public void setIncrementalPagerSyncEnabled(boolean enabled) {
+        mIncrementalPagerSyncEnabled = enabled;
+    }
+
+    /**
+     * Returns whether pager adapter changes are applied incrementally.
+     *
+     * @see #setIncrementalPagerSyncEnabled(boolean)
+     */
+    public boolean isIncrementalPagerSyncEnabled() {
+        return mIncrementalPagerSyncEnabled;
+    }
+
     /**
      * @deprecated Use {@link #setupWithViewPager(ViewPager)} to link a TabLayout with a ViewPager
      * together. When that method is used, the TabLayout will be automatically updated
@@ -870,6 +1370,9 @@ public class XTabLayout extends HorizontalScrollView {
             setupWithViewPager(null);
             mSetupViewPagerImplicitly = false;
         }
+
+        // Don't keep building views for a layout which is going away
+        stopTabViewPrewarm();
     }
 
     private int getTabScrollRange() {
@@ -884,6 +1387,7 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         mPagerAdapter = adapter;
+        mPagerAdapterHasStableIds = hasStableIds(adapter);
 
         if (addObserver && adapter != null) {
             // Register our observer on the new adapter
@@ -898,24 +1402,197 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     void populateFromPagerAdapter() {
-        removeAllTabs();
+        beginBatch();
+        try {
+            removeAllTabs();
+
+            if (mPagerAdapter != null) {
+                final int adapterCount = mPagerAdapter.getCount();
+                for (int i = 0; i < adapterCount; i++) {
+                    final CharSequence title = mPagerAdapter.getPageTitle(i);
+                    final Tab tab = newTab().setText(title);
+                    tab.mAdapterKey = getAdapterKey(i, title);
+                    addTab(tab, false);
+                }
 
-        if (mPagerAdapter != null) {
-            final int adapterCount = mPagerAdapter.getCount();
-            for (int i = 0; i < adapterCount; i++) {
-                addTab(newTab().setText(mPagerAdapter.getPageTitle(i)), false);
+                // Make sure we reflect the currently set ViewPager item
+                if (mViewPager != null && adapterCount > 0) {
+                    final int curItem = mViewPager.getCurrentItem();
+                    if (curItem != getSelectedTabPosition() && curItem < getTabCount()) {
+                        selectTab(getTabAt(curItem));
+                    }
+                }
+            }
+        } finally {
+            commitBatch();
+        }
+    }
+
+    /**
+     * Applies a data set change of the pager adapter, see
+     * {@link #setIncrementalPagerSyncEnabled(boolean)}.
+     */
+    void syncFromPagerAdapter() {
+        if (!mIncrementalPagerSyncEnabled || mPagerAdapter == null || mTabs.isEmpty()) {
+            populateFromPagerAdapter();
+            return;
+        }
+
+        // As a batch, so the views are brought in line with a single layout pass, and the
+        // indicator follows the selected tab wherever it has moved to
+        beginBatch();
+        try {
+            applyPagerAdapterDiff();
+        } finally {
+            commitBatch();
+        }
+    }
+
+    private void applyPagerAdapterDiff() {
+        // Index the tabs which were created from the adapter by their key. Keys can repeat, so
+        // every key maps to its tabs in their current order.
+        final HashMap<Object, ArrayDeque<Tab>> oldTabs = new HashMap<>();
+        final ArrayList<Tab> removedTabs = new ArrayList<>();
+        for (int i = 0, count = mTabs.size(); i < count; i++) {
+            final Tab tab = mTabs.get(i);
+            if (tab.mAdapterKey == null) {
+                // Added by hand, populateFromPagerAdapter() would have removed it as well
+                removedTabs.add(tab);
+                continue;
+            }
+            ArrayDeque<Tab> tabs = oldTabs.get(tab.mAdapterKey);
+            if (tabs == null) {
+                tabs = new ArrayDeque<>();
+                oldTabs.put(tab.mAdapterKey, tabs);
+            }
+            tabs.add(tab);
+        }
+
+        // Match every page with an existing tab with the same key
+        final int adapterCount = mPagerAdapter.getCount();
+        final ArrayList<Tab> newTabs = new ArrayList<>(adapterCount);
+        final CharSequence[] titles = new CharSequence[adapterCount];
+        boolean hasUnmatchedPages = false;
+        for (int i = 0; i < adapterCount; i++) {
+            final CharSequence title = mPagerAdapter.getPageTitle(i);
+            titles[i] = title;
+            final ArrayDeque<Tab> tabs = oldTabs.get(getAdapterKey(i, title));
+            final Tab tab = tabs != null ? tabs.poll() : null;
+            if (tab != null) {
+                if (!TextUtils.equals(title, tab.getText())) {
+                    // Only possible with stable ids
+                    tab.setText(title);
+                }
+            } else {
+                hasUnmatchedPages = true;
             }
+            newTabs.add(tab);
+        }
 
-            // Make sure we reflect the currently set ViewPager item
-            if (mViewPager != null && adapterCount > 0) {
-                final int curItem = mViewPager.getCurrentItem();
-                if (curItem != getSelectedTabPosition() && curItem < getTabCount()) {
-                    selectTab(getTabAt(curItem));
+        // Tabs left over have been removed or re-titled. Re-use them, in order, for the pages
+        // we couldn't match, so a changed title doesn't cost a new view.
+        final ArrayList<Tab> leftOverTabs = new ArrayList<>();
+        for (int i = 0, count = mTabs.size(); i < count; i++) {
+            final Tab tab = mTabs.get(i);
+            final ArrayDeque<Tab> tabs = tab.mAdapterKey != null
+                    ? oldTabs.get(tab.mAdapterKey) : null;
+            if (tabs != null && tabs.remove(tab)) {
+                leftOverTabs.add(tab);
+            }
+        }
+        if (hasUnmatchedPages) {
+            int reused = 0;
+            for (int i = 0; i < adapterCount; i++) {
+                if (newTabs.get(i) != null) {
+                    continue;
                 }
+                final Tab tab = reused < leftOverTabs.size()
+                        ? leftOverTabs.get(reused++) : newTab();
+                tab.setText(titles[i]);
+                tab.mAdapterKey = getAdapterKey(i, titles[i]);
+                newTabs.set(i, tab);
+            }
+            removedTabs.addAll(leftOverTabs.subList(reused, leftOverTabs.size()));
+        } else {
+            removedTabs.addAll(leftOverTabs);
+        }
+
+        if (removedTabs.isEmpty() && newTabs.equals(mTabs)) {
+            // Nothing has moved, any title changes are applied with the batch
+            return;
+        }
+
+        // The tab whose view is shown as selected, which may be another than the selected tab
+        final Tab selectedViewTab = mSelectedTabViewPosition >= 0
+                && mSelectedTabViewPosition < mTabs.size()
+                ? mTabs.get(mSelectedTabViewPosition) : null;
+
+        // Drop the removed tabs and their views
+        boolean selectedTabRemoved = false;
+        for (int i = 0, count = removedTabs.size(); i < count; i++) {
+            final Tab tab = removedTabs.get(i);
+            recycleTabView(tab);
+            selectedTabRemoved |= tab == mSelectedTab;
+            tab.reset();
+            sTabPool.release(tab);
+        }
+
+        // Now apply the new order, the views follow it when the batch is committed
+        mTabs.clear();
+        mTabs.addAll(newTabs);
+        for (int i = 0; i < adapterCount; i++) {
+            mTabs.get(i).setPosition(i);
+        }
+        mDirtyTabPositionsFrom = -1;
+        mBatchTabsChanged = true;
+
+        if (selectedViewTab != null && selectedViewTab.mParent == this) {
+            mSelectedTabViewPosition = selectedViewTab.getPosition();
+        } else {
+            clearSelectedTabView();
+        }
+        if (selectedTabRemoved) {
+            mSelectedTab = null;
+        }
+
+        // Make sure we reflect the currently set ViewPager item
+        if (mViewPager != null && adapterCount > 0) {
+            final int curItem = mViewPager.getCurrentItem();
+            if (curItem != getSelectedTabPosition() && curItem < getTabCount()) {
+                selectTab(getTabAt(curItem));
             }
         }
     }
 
+    /**
+     * Returns the key which identifies the adapter's page at {@code position}, titled
+     * {@code title}, across data set changes: its stable id if the adapter has them, else its
+     * title.
+     */
+    private Object getAdapterKey(int position, CharSequence title) {
+        if (mPagerAdapterHasStableIds) {
+            return ((FragmentPagerAdapter) mPagerAdapter).getItemId(position);
+        }
+        return title != null ? title.toString() : "";
+    }
+
+    /**
+     * Returns whether the adapter is a {@link FragmentPagerAdapter} which overrides
+     * {@link FragmentPagerAdapter#getItemId(int)}. By default the id is the position, which
+     * would make every tab after an inserted or removed page look re-titled.
+     */
+    private static boolean hasStableIds(@Nullable PagerAdapter adapter) {
+        if (!(adapter instanceof FragmentPagerAdapter)) {
+            return false;
+        }
+        try {
+            return adapter.getClass().getMethod("getItemId", int.class).getDeclaringClass()
+                    != FragmentPagerAdapter.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
     private void updateAllTabs() {
         for (int i = 0, z = mTabs.size(); i < z; i++) {
             mTabs.get(i).updateView();
@@ -923,9 +1600,9 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     private TabView createTabView(@NonNull final Tab tab) {
-        TabView tabView = mTabViewPool != null ? mTabViewPool.acquire() : null;
+        TabView tabView = acquireTabView();
         if (tabView == null) {
-            tabView = new TabView(getContext());
+            tabView = new TabView(this);
         }
         tabView.setTab(tab);
         tabView.setFocusable(true);
@@ -933,19 +1610,104 @@ public class XTabLayout extends HorizontalScrollView {
         return tabView;
     }
 
-    private void configureTab(Tab tab, int position) {
-        tab.setPosition(position);
-        mTabs.add(position, tab);
-
-        final int count = mTabs.size();
-        for (int i = position + 1; i < count; i++) {
-            mTabs.get(i).setPosition(i);
+    @Nullable
+    private TabView acquireTabView() {
+        final TabView tabView = mTabViewPool.acquire(getTabViewType(), getContext());
+        if (tabView != null) {
+            // The view may have been released by another tab layout sharing the pool
+            tabView.setOwner(this);
         }
+        return tabView;
     }
 
-    private void addTabView(Tab tab) {
-        final TabView tabView = tab.mView;
-        mTabStrip.addView(tabView, tab.getPosition(), createLayoutParamsForTabs());
+    private boolean releaseTabView(TabView tabView) {
+        return mTabViewPool.release(tabView,
+                tabView.isFlat() ? TabViewPool.VIEW_TYPE_FLAT : TabViewPool.VIEW_TYPE_DEFAULT);
+    }
+
+    /**
+     * Returns the pool view type of the views we create for tabs without a custom view.
+     */
+    private int getTabViewType() {
+        return mFlatTabViewsEnabled ? TabViewPool.VIEW_TYPE_FLAT : TabViewPool.VIEW_TYPE_DEFAULT;
+    }
+
+    private boolean needsTabViewPrewarm() {
+        return mTabStrip.getChildCount() + mTabViewPool.getPooledViewCount(getTabViewType())
+                < mTabViewPrewarmCount;
+    }
+
+    private void stopTabViewPrewarm() {
+        if (mTabViewPrewarmer != null) {
+            Looper.myQueue().removeIdleHandler(mTabViewPrewarmer);
+            mTabViewPrewarmer = null;
+        }
+    }
+
+    private void configureTab(Tab tab, int position) {
+        tab.setPosition(position);
+        mTabs.add(position, tab);
+
+        // The tabs after it have moved up, they're renumbered when a position is next read
+        invalidateTabPositions(position + 1);
+        if (mSelectedTabViewPosition >= position) {
+            mSelectedTabViewPosition++;
+        }
+        mBatchTabsChanged |= mBatchDepth > 0;
+    }
+
+    private void addTabView(Tab tab) {
+        if (mTabStrip.isVirtualizing()) {
+            // The strip binds a view once the tab is within the viewport
+            recycleTabView(tab);
+            mTabStrip.onTabsChanged();
+            return;
+        }
+        if (tab.mView == null) {
+            tab.mView = createTabView(tab);
+        }
+        final TabView tabView = tab.mView;
+        mTabStrip.addView(tabView, tab.getPosition(), createLayoutParamsForTabs());
+    }
+
+    /**
+     * Detaches the tab's view, if it has one, from the strip and returns it to the pool.
+     */
+    private void recycleTabView(Tab tab) {
+        final TabView view = tab.mView;
+        if (view != null) {
+            if (view.getParent() == mTabStrip) {
+                if (mBatchDepth > 0) {
+                    // The strip is laid out once the batch is committed
+                    mTabStrip.removeViewInLayout(view);
+                } else {
+                    mTabStrip.removeView(view);
+                }
+            }
+            view.reset();
+            releaseTabView(view);
+            tab.mView = null;
+        }
+    }
+
+    /**
+     * Moves the tab views between the plain and the virtualizing strip whenever the effective
+     * virtualization state changes, e.g. after {@link #setTabMode(int)}.
+     */
+    private void syncTabViewVirtualization() {
+        final boolean virtualize = mTabViewVirtualizationEnabled && mMode == MODE_SCROLLABLE;
+        if (virtualize == mTabStrip.isVirtualizing()) {
+            return;
+        }
+        for (int i = 0, count = mTabs.size(); i < count; i++) {
+            recycleTabView(mTabs.get(i));
+        }
+        mTabStrip.setVirtualizing(virtualize);
+        if (!virtualize) {
+            for (int i = 0, count = mTabs.size(); i < count; i++) {
+                addTabView(mTabs.get(i));
+            }
+        }
     }
 
     /**
@@ -1006,6 +1768,12 @@ public class XTabLayout extends HorizontalScrollView {
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final boolean trace = sTraceEnabled;
+        if (trace) {
+            TraceCompat.beginSection(TRACE_TAB_LAYOUT_MEASURE);
+        }
+        onMeasurePass(LayoutPassStats.VIEW_TAB_LAYOUT);
+
         // If we have a MeasureSpec which allows us to decide our height, try and use the default
         // height
         final int idealHeight = dpToPx(getDefaultHeight()) + getPaddingTop() + getPaddingBottom();
@@ -1029,48 +1797,103 @@ public class XTabLayout extends HorizontalScrollView {
                     : specWidth - dpToPx(TAB_MIN_WIDTH_MARGIN);
         }
 
-        // Now super measure itself using the (possibly) modified height spec
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        // Rather than letting HorizontalScrollView measure the content root at its natural width
+        // and then measuring it again to fit us, we settle its width up front. With an exact
+        // width, which is the common case, that is a single pass
+        final int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        final int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec,
+                getPaddingTop() + getPaddingBottom(), mContentRoot.getLayoutParams().height);
+        final int width;
+        if (MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.EXACTLY) {
+            width = specWidth;
+            measureContentRoot(width - horizontalPadding, childHeightMeasureSpec);
+        } else {
+            // Our width depends on the tabs, so we need their natural width first
+            mContentRoot.mMinWidth = 0;
+            mContentRoot.measure(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED),
+                    childHeightMeasureSpec);
+            width = resolveSize(mContentRoot.getMeasuredWidth() + horizontalPadding,
+                    widthMeasureSpec);
+            if (mContentRoot.getMeasuredWidth() != width - horizontalPadding) {
+                measureContentRoot(width - horizontalPadding, childHeightMeasureSpec);
+            }
+        }
+        setMeasuredDimension(width, MeasureSpec.getSize(heightMeasureSpec));
+
+        if (trace) {
+            TraceCompat.endSection();
+        }
+    }
 
-        if (getChildCount() == 1 || mHasCenterButton) {
-            // If we're in fixed mode then we need to make the tab strip is the same width as us
-            // so we don't scroll
-            final View child = getChildAt(getChildCount() - 1);
-            boolean remeasure = false;
+    /**
+     * Measures the content root for a viewport of the given width. In fixed mode the tabs fit
+     * the viewport, in scrollable mode they take their natural width and the content root
+     * fills the viewport if they're narrower.
+     */
+    private void measureContentRoot(int viewportWidth, int heightMeasureSpec) {
+        viewportWidth = Math.max(viewportWidth, 0);
+        if (mMode == MODE_FIXED) {
+            mContentRoot.mMinWidth = 0;
+            mContentRoot.measure(
+                    MeasureSpec.makeMeasureSpec(viewportWidth, MeasureSpec.EXACTLY),
+                    heightMeasureSpec);
+        } else {
+            mContentRoot.mMinWidth = viewportWidth;
+            mContentRoot.measure(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED),
+                    heightMeasureSpec);
+        }
+    }
 
-            switch (mMode) {
-                case MODE_SCROLLABLE:
-                    // We only need to resize the child if it's smaller than us. This is similar
-                    // to fillViewport
-                    remeasure = child.getMeasuredWidth() < getMeasuredWidth();
-                    break;
-                case MODE_FIXED:
-                    // Resize the child so that it doesn't scroll
-                    remeasure = child.getMeasuredWidth() != getMeasuredWidth();
-                    break;
-            }
+    @Override
+    protected void onLayout(boolean changed, int l, int t, int r, int b) {
+        super.onLayout(changed, l, t, r, b);
+        onLayoutPass(LayoutPassStats.VIEW_TAB_LAYOUT);
+    }
 
-            if (remeasure) {
-                // Re-measure the child with a widthSpec set to be exactly our measure width
-                int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec, getPaddingTop()
-                        + getPaddingBottom(), child.getLayoutParams().height);
-                int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec(
-                        getMeasuredWidth(), MeasureSpec.EXACTLY);
-                child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
+    /**
+     * Detaches the views of all tabs from the strip at once and returns them to the pool. In a
+     * batch the layout request is left to {@link #commitBatch()}.
+     */
+    private void recycleAllTabViews() {
+        mTabStrip.removeAllViewsInLayout();
+        for (int i = 0, count = mTabs.size(); i < count; i++) {
+            final Tab tab = mTabs.get(i);
+            final TabView view = tab.mView;
+            if (view != null) {
+                view.reset();
+                releaseTabView(view);
+                tab.mView = null;
             }
         }
+
+        if (mBatchDepth > 0) {
+            mBatchTabsChanged = true;
+            return;
+        }
+        if (mTabStrip.isVirtualizing()) {
+            mTabStrip.onTabsChanged();
+        }
+        mTabStrip.requestLayout();
+        mTabStrip.invalidate();
     }
 
     private void removeTabViewAt(int position) {
-        final TabView view = (TabView) mTabStrip.getChildAt(position);
-        mTabStrip.removeViewAt(position);
-        if (view != null) {
-            view.reset();
-            mTabViewPool.release(view);
+        recycleTabView(mTabs.get(position));
+        if (mTabStrip.isVirtualizing()) {
+            mTabStrip.onTabsChanged();
         }
         requestLayout();
     }
 
+    @Override
+    protected void onScrollChanged(int l, int t, int oldl, int oldt) {
+        super.onScrollChanged(l, t, oldl, oldt);
+        if (mTabStrip.isVirtualizing()) {
+            // Bind the tabs which are scrolling into view and recycle the ones leaving it
+            mTabStrip.bindVisibleTabViews();
+        }
+    }
+
     private void animateToTab(int newPosition) {
         if (newPosition == Tab.INVALID_POSITION) {
             return;
@@ -1084,38 +1907,204 @@ public class XTabLayout extends HorizontalScrollView {
             return;
         }
 
-        final int startScrollX = getScrollX();
-        final int targetScrollX = calculateScrollXForTab(newPosition, 0);
+        cancelTabTransition();
+
+        mTransitionStartScrollX = getScrollX();
+        mTransitionStartFraction = 0f;
+        mTransitionTargetScrollX = calculateScrollXForTab(newPosition, 0);
+        mTransitionTargetPosition = newPosition;
+        mTransitionAnimatesScroll = mTransitionStartScrollX != mTransitionTargetScrollX;
+
+        // Now set up the indicator, which moves along with the scroll
+        final boolean animatesIndicator = mTabStrip.prepareIndicatorTransition(newPosition);
+
+        if (mTransitionAnimatesScroll || animatesIndicator) {
+            ensureTabTransitionAnimator();
+            mTabTransitionAnimator.setDuration(ANIMATION_DURATION);
+            final long startTime = System.nanoTime();
+            // start() applies the first fraction straight away, before anything is drawn. Only
+            // start measuring after it, so the first frame counted is the first one animated
+            // from a display frame callback.
+            mTabTransitionAnimator.start();
+            if (mSwitchMetricsListener != null && mTabTransitionAnimator.isRunning()) {
+                startSwitchMetrics(newPosition, startTime);
+            }
+        }
+    }
+
+    private void startSwitchMetrics(int position, long startTime) {
+        mSwitchMeasuring = true;
+        mSwitchTab = getTabAt(position);
+        mSwitchStartTime = mSwitchTapTime >= 0 ? mSwitchTapTime : startTime;
+        mSwitchFrameCount = 0;
+        mSwitchMissedFrameCount = 0;
+        final Display display = ViewCompat.getDisplay(this);
+        final float refreshRate = display != null ? display.getRefreshRate() : 0;
+        mSwitchFrameInterval = (long) (1000000000 / (refreshRate > 0 ? refreshRate : 60));
+    }
 
-        if (startScrollX != targetScrollX) {
-            if (mScrollAnimator == null) {
-                mScrollAnimator = ViewUtils.createAnimator();
-                mScrollAnimator.setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR);
-                mScrollAnimator.setDuration(ANIMATION_DURATION);
-                mScrollAnimator.addUpdateListener(new ValueAnimatorCompat.AnimatorUpdateListener() {
-                    @Override
-                    public void onAnimationUpdate(ValueAnimatorCompat animator) {
-                        scrollTo(animator.getAnimatedIntValue(), 0);
-                    }
-                });
+    private void onSwitchFrame() {
+        final long now = System.nanoTime();
+        if (mSwitchFrameCount == 0) {
+            mSwitchFirstFrameTime = now;
+        } else {
+            final long interval = now - mSwitchLastFrameTime;
+            if (interval > mSwitchFrameInterval * 3 / 2) {
+                // Count each vsync we slept through
+                mSwitchMissedFrameCount += (int) ((interval + mSwitchFrameInterval / 2)
+                        / mSwitchFrameInterval) - 1;
             }
+        }
+        mSwitchLastFrameTime = now;
+        mSwitchFrameCount++;
+    }
+
+    private void finishSwitchMetrics() {
+        mSwitchMeasuring = false;
+        final Tab tab = mSwitchTab;
+        mSwitchTab = null;
+        if (mSwitchFrameCount > 0 && tab != null) {
+            mSwitchMetricsListener.onTabSwitchMetrics(tab,
+                    (mSwitchFirstFrameTime - mSwitchStartTime) / 1000000,
+                    (mSwitchLastFrameTime - mSwitchFirstFrameTime) / 1000000,
+                    mSwitchFrameCount, mSwitchMissedFrameCount);
+        }
+    }
+
+    private void ensureTabTransitionAnimator() {
+        if (mTabTransitionAnimator == null) {
+            mTabTransitionAnimator = ViewUtils.createAnimator();
+            mTabTransitionAnimator.setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR);
+            mTabTransitionAnimator.setFloatValues(0, 1);
+            mTabTransitionAnimator.addUpdateListener(
+                    new ValueAnimatorCompat.AnimatorUpdateListener() {
+                @Override
+                public void onAnimationUpdate(ValueAnimatorCompat animator) {
+                    // One interpolation per frame, for both the scroll and the indicator
+                    final float fraction = animator.getAnimatedFraction();
+                    if (mTransitionAnimatesScroll) {
+                        scrollTo(lerpTransition(mTransitionStartScrollX, mTransitionTargetScrollX,
+                                mTransitionStartFraction, fraction), 0);
+                    }
+                    mTabStrip.setIndicatorTransitionFraction(fraction);
+                    if (mSwitchMeasuring) {
+                        onSwitchFrame();
+                    }
+                }
+            });
+            mTabTransitionAnimator.addListener(new ValueAnimatorCompat.AnimatorListenerAdapter() {
+                @Override
+                public void onAnimationEnd(ValueAnimatorCompat animator) {
+                    mTransitionAnimatesScroll = false;
+                    mTabStrip.endIndicatorTransition(mTransitionTargetPosition);
+                    if (mSwitchMeasuring) {
+                        // An interrupted switch is reported with the frames it got to render
+                        finishSwitchMetrics();
+                    }
+                }
+            });
+        }
+    }
+
+    boolean isTabTransitionRunning() {
+        return mTabTransitionAnimator != null && mTabTransitionAnimator.isRunning();
+    }
+
+    void cancelTabTransition() {
+        if (isTabTransitionRunning()) {
+            mTabTransitionAnimator.cancel();
+        }
+    }
 
-            mScrollAnimator.setIntValues(startScrollX, targetScrollX);
-            mScrollAnimator.start();
+    /**
+     * Points a running tab transition at the current geometry of its target tab, e.g. after a
+     * layout pass. The animator keeps running, so the motion stays continuous: the rest of it
+     * goes from where things are now to the new target.
+     */
+    void retargetTabTransition() {
+        final float fraction = mTabTransitionAnimator.getAnimatedFraction();
+        if (mTransitionAnimatesScroll) {
+            mTransitionStartScrollX = getScrollX();
+            mTransitionStartFraction = fraction;
+            mTransitionTargetScrollX = calculateScrollXForTab(mTransitionTargetPosition, 0);
         }
+        mTabStrip.retargetIndicatorTransition(mTransitionTargetPosition, fraction);
+    }
 
-        // Now animate the indicator
-        mTabStrip.animateIndicatorToPosition(newPosition, ANIMATION_DURATION);
+    /**
+     * Returns the value of a transition which was at {@code start} at {@code startFraction}
+     * and reaches {@code target} at 1, for the given fraction. This covers the remaining
+     * distance over the remaining fraction, so it stays within the two values however late a
+     * transition is retargeted.
+     */
+    static int lerpTransition(int start, int target, float startFraction, float fraction) {
+        if (startFraction >= 1f || fraction >= 1f) {
+            return target;
+        }
+        final float remaining = MathUtils.constrain(
+                (1f - fraction) / (1f - startFraction), 0f, 1f);
+        return target + Math.round(remaining * (start - target));
     }
 
+    /**
+     * Shows the tab view at {@code position} as selected. This is called for every ViewPager
+     * frame, so rather than visiting every tab we only update the previous and the new view.
+     * Tab views which are updated keep to this too, see {@link #updateSelectedTabView(TabView)}.
+     */
     private void setSelectedTabView(int position) {
-        final int tabCount = mTabStrip.getChildCount();
-        if (position < tabCount) {
-            for (int i = 0; i < tabCount; i++) {
-                final View child = mTabStrip.getChildAt(i);
-                child.setSelected(i == position);
+        if (position < mTabStrip.getTabCount()) {
+            final View view = mTabStrip.getTabViewAt(position);
+            if (view != mSelectedTabView) {
+                if (mSelectedTabView != null) {
+                    mSelectedTabView.setSelected(false);
+                }
+                mSelectedTabView = view;
+            }
+            if (view != null) {
+                view.setSelected(true);
+            }
+            mSelectedTabViewPosition = position;
+        }
+    }
+
+    private void clearSelectedTabView() {
+        if (mSelectedTabView != null) {
+            mSelectedTabView.setSelected(false);
+            mSelectedTabView = null;
+        }
+        mSelectedTabViewPosition = Tab.INVALID_POSITION;
+    }
+
+    /**
+     * Returns whether the given tab view, which has just been updated, should be shown as
+     * selected. That is the view at the position of the last {@link #setSelectedTabView(int)},
+     * which during a swipe can be another tab than the selected one. The view is made the
+     * selected tab view, or stops being it, accordingly.
+     */
+    boolean updateSelectedTabView(TabView view) {
+        final Tab tab = view.getTab();
+        final boolean selected;
+        if (tab == null) {
+            selected = false;
+        } else if (tab.mParent == this && mSelectedTabViewPosition != Tab.INVALID_POSITION) {
+            selected = tab.getPosition() == mSelectedTabViewPosition;
+        } else {
+            selected = tab.isSelected();
+        }
+        if (view == mTabStrip.mScrapTabView) {
+            // Only used for measuring
+            return selected;
+        }
+
+        if (selected) {
+            if (mSelectedTabView != view && mSelectedTabView != null) {
+                mSelectedTabView.setSelected(false);
             }
+            mSelectedTabView = view;
+        } else if (mSelectedTabView == view) {
+            mSelectedTabView = null;
         }
+        return selected;
     }
 
     void selectTab(Tab tab) {
@@ -1123,6 +2112,12 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     void selectTab(final Tab tab, boolean updateIndicator) {
+        if (mBatchDepth > 0) {
+            // Only the final selection of the batch is applied
+            mBatchHasSelection = true;
+            mBatchSelection = tab;
+            return;
+        }
         final Tab currentTab = mSelectedTab;
 
         if (currentTab == tab) {
@@ -1142,6 +2137,8 @@ public class XTabLayout extends HorizontalScrollView {
                 }
                 if (newPosition != Tab.INVALID_POSITION) {
                     setSelectedTabView(newPosition);
+                } else {
+                    clearSelectedTabView();
                 }
             }
             if (currentTab != null) {
@@ -1155,35 +2152,87 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     private void dispatchTabSelected(@NonNull final Tab tab) {
+        final boolean trace = sTraceEnabled;
+        if (trace) {
+            TraceCompat.beginSection(TRACE_DISPATCH_SELECTED);
+        }
         for (int i = mSelectedListeners.size() - 1; i >= 0; i--) {
-            mSelectedListeners.get(i).onTabSelected(tab);
+            final OnTabSelectedListener listener = mSelectedListeners.get(i);
+            if (trace) {
+                beginListenerTraceSection("onTabSelected ", listener);
+            }
+            listener.onTabSelected(tab);
+            if (trace) {
+                TraceCompat.endSection();
+            }
+        }
+        if (trace) {
+            TraceCompat.endSection();
         }
     }
 
     private void dispatchTabUnselected(@NonNull final Tab tab) {
+        final boolean trace = sTraceEnabled;
+        if (trace) {
+            TraceCompat.beginSection(TRACE_DISPATCH_UNSELECTED);
+        }
         for (int i = mSelectedListeners.size() - 1; i >= 0; i--) {
-            mSelectedListeners.get(i).onTabUnselected(tab);
+            final OnTabSelectedListener listener = mSelectedListeners.get(i);
+            if (trace) {
+                beginListenerTraceSection("onTabUnselected ", listener);
+            }
+            listener.onTabUnselected(tab);
+            if (trace) {
+                TraceCompat.endSection();
+            }
+        }
+        if (trace) {
+            TraceCompat.endSection();
         }
     }
 
     private void dispatchTabReselected(@NonNull final Tab tab) {
+        final boolean trace = sTraceEnabled;
+        if (trace) {
+            TraceCompat.beginSection(TRACE_DISPATCH_RESELECTED);
+        }
         for (int i = mSelectedListeners.size() - 1; i >= 0; i--) {
-            mSelectedListeners.get(i).onTabReselected(tab);
+            final OnTabSelectedListener listener = mSelectedListeners.get(i);
+            if (trace) {
+                beginListenerTraceSection("onTabReselected ", listener);
+            }
+            listener.onTabReselected(tab);
+            if (trace) {
+                TraceCompat.endSection();
+            }
+        }
+        if (trace) {
+            TraceCompat.endSection();
         }
     }
 
+    /**
+     * Begins a trace section named after the listener's class, so that slow listeners can be
+     * told apart in a trace.
+     */
+    private static void beginListenerTraceSection(String prefix, Object listener) {
+        final String name = prefix + listener.getClass().getName();
+        TraceCompat.beginSection(name.length() > MAX_TRACE_SECTION_NAME_LENGTH
+                ? name.substring(0, MAX_TRACE_SECTION_NAME_LENGTH)
+                : name);
+    }
+
     private int calculateScrollXForTab(int position, float positionOffset) {
         if (mMode == MODE_SCROLLABLE) {
-            final View selectedChild = mTabStrip.getChildAt(position);
-            final View nextChild = position + 1 < mTabStrip.getChildCount()
-                    ? mTabStrip.getChildAt(position + 1)
-                    : null;
-            final int selectedWidth = selectedChild != null ? selectedChild.getWidth() : 0;
-            final int nextWidth = nextChild != null ? nextChild.getWidth() : 0;
+            // Use the strip's tab geometry, since tabs might not have a bound view
+            final int selectedWidth = mTabStrip.getTabWidth(position);
+            final int nextWidth = position + 1 < mTabStrip.getTabCount()
+                    ? mTabStrip.getTabWidth(position + 1)
+                    : 0;
 
-            return selectedChild.getLeft()
+            return mTabStrip.getTabLeft(position)
                     + ((int) ((selectedWidth + nextWidth) * positionOffset * 0.5f))
-                    + (selectedChild.getWidth() / 2)
+                    + (selectedWidth / 2)
                     - (getWidth() / 2);
         }
         return 0;
@@ -1206,6 +2255,7 @@ public class XTabLayout extends HorizontalScrollView {
                 break;
         }
 
+        syncTabViewVirtualization();
         updateTabViews(true);
     }
 
@@ -1218,6 +2268,10 @@ public class XTabLayout extends HorizontalScrollView {
                 child.requestLayout();
             }
         }
+        if (mTabStrip.isVirtualizing()) {
+            // The min width is part of every cached tab width
+            mTabStrip.onTabsChanged();
+        }
     }
 
     /**
@@ -1238,6 +2292,13 @@ public class XTabLayout extends HorizontalScrollView {
         private CharSequence mContentDesc;
         private int mPosition = INVALID_POSITION;
         private View mCustomView;
+        Object mAdapterKey; // identifies the adapter page this tab was created for
+        // Whether this tab is counted in XTabLayout.mIconAndTextTabCount
+        boolean mCountedAsIconAndText;
+        // Whether this tab's view is updated when the current batch is committed
+        boolean mBatchUpdatePending;
+        // Whether this tab's cached width in a virtualizing strip is stale
+        boolean mOffsetDirty;
 
         XTabLayout mParent;
         TabView mView;
@@ -1266,6 +2327,13 @@ public class XTabLayout extends HorizontalScrollView {
             return this;
         }
 
+        /**
+         * Returns the view currently showing this tab. This is {@code null} while the tab is
+         * scrolled out of view of a layout with tab view virtualization enabled.
+         *
+         * @see XTabLayout#setTabViewVirtualizationEnabled(boolean)
+         */
+        @Nullable
         public View getView() {
             return mView;
         }
@@ -1316,8 +2384,13 @@ public class XTabLayout extends HorizontalScrollView {
          */
         @NonNull
         public Tab setCustomView(@LayoutRes int resId) {
-            final LayoutInflater inflater = LayoutInflater.from(mView.getContext());
-            return setCustomView(inflater.inflate(resId, mView, false));
+            if (mParent == null) {
+                throw new IllegalArgumentException("Tab not attached to a TabLayout");
+            }
+            final LayoutInflater inflater = LayoutInflater.from(mParent.getContext());
+            // The strip hands out the same LinearLayout params as an unbound TabView would
+            final ViewGroup root = mView != null ? mView : mParent.mTabStrip;
+            return setCustomView(inflater.inflate(resId, root, false));
         }
 
         /**
@@ -1337,11 +2410,23 @@ public class XTabLayout extends HorizontalScrollView {
          * the action bar.
          */
         public int getPosition() {
+            if (mParent != null && mParent.mDirtyTabPositionsFrom >= 0
+                    && mPosition != INVALID_POSITION) {
+                // Tabs have been added or removed since we were numbered. If we're still found
+                // at our position it's current, else all stale positions are renumbered.
+                final ArrayList<Tab> tabs = mParent.mTabs;
+                if (mPosition >= tabs.size() || tabs.get(mPosition) != this) {
+                    mParent.ensureTabPositions();
+                }
+            }
             return mPosition;
         }
 
         void setPosition(int position) {
             mPosition = position;
+            if (mParent != null) {
+                mParent.updateIconAndTextTabCount(this);
+            }
         }
 
         /**
@@ -1427,7 +2512,7 @@ public class XTabLayout extends HorizontalScrollView {
             if (mParent == null) {
                 throw new IllegalArgumentException("Tab not attached to a TabLayout");
             }
-            return mParent.getSelectedTabPosition() == mPosition;
+            return mParent.getSelectedTabPosition() == getPosition();
         }
 
         /**
@@ -1476,12 +2561,30 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         void updateView() {
+            if (mParent != null) {
+                mParent.updateIconAndTextTabCount(this);
+                if (mParent.mBatchDepth > 0) {
+                    if (!mBatchUpdatePending) {
+                        mBatchUpdatePending = true;
+                        mParent.mBatchUpdatedTabs.add(this);
+                    }
+                    return;
+                }
+            }
             if (mView != null) {
                 mView.update();
             }
+            if (mParent != null && mParent.mTabStrip.isVirtualizing()) {
+                // Bound or not, the cached width of this tab is now stale
+                mParent.mTabStrip.onTabChanged(this);
+            }
         }
 
         void reset() {
+            if (mParent != null) {
+                mPosition = INVALID_POSITION;
+                mParent.updateIconAndTextTabCount(this);
+            }
             mParent = null;
             mView = null;
             mTag = null;
@@ -1490,10 +2593,12 @@ public class XTabLayout extends HorizontalScrollView {
             mContentDesc = null;
             mPosition = INVALID_POSITION;
             mCustomView = null;
+            mAdapterKey = null;
         }
     }
 
-    class TabView extends LinearLayout implements OnLongClickListener {
+    static class TabView extends LinearLayout implements OnLongClickListener {
+        private XTabLayout mOwner;
         private Tab mTab;
         private TextView mTextView;
         private ImageView mIconView;
@@ -1504,11 +2609,28 @@ public class XTabLayout extends HorizontalScrollView {
 
         private int mDefaultMaxLines = 2;
 
-        public TabView(Context context) {
-            super(context);
-            if (mTabBackgroundResId != 0) {
-                ViewCompat.setBackground(
-                        this, AppCompatResources.getDrawable(context, mTabBackgroundResId));
+        // Text sizing and measured size for the last inputs, see onMeasure()
+        private final TabMeasureCache mMeasureCache = new TabMeasureCache();
+
+        // Content we draw ourselves, see setFlatTabViewsEnabled()
+        private boolean mFlat;
+        private CharSequence mFlatText;
+        private Drawable mFlatIcon;
+        private TextPaint mFlatTextPaint;
+        private TextPaint mFlatMultiLineTextPaint;
+        private Layout mFlatTextLayout;
+        private int mFlatTextLayoutWidth = -1; // the available width mFlatTextLayout is for
+
+        // Passes in the frame being counted, see setLayoutPassCountingEnabled()
+        int mMeasurePasses;
+        int mLayoutPasses;
+
+        public TabView(XTabLayout owner) {
+            super(owner.getContext());
+            mOwner = owner;
+            if (owner.mTabBackgroundResId != 0) {
+                ViewCompat.setBackground(this,
+                        AppCompatResources.getDrawable(getContext(), owner.mTabBackgroundResId));
             }
 //            ViewCompat.setPaddingRelative(this, mTabPaddingStart, mTabPaddingTop,
 //                    mTabPaddingEnd, mTabPaddingBottom);
@@ -1520,6 +2642,32 @@ public class XTabLayout extends HorizontalScrollView {
                     PointerIconCompat.getSystemIcon(getContext(), PointerIconCompat.TYPE_HAND));
         }
 
+        /**
+         * Moves this view, which must not be bound to a tab, to another tab layout sharing the
+         * same {@link TabViewPool}.
+         */
+        void setOwner(XTabLayout owner) {
+            if (owner == mOwner) {
+                return;
+            }
+            final int oldBackgroundResId = mOwner.mTabBackgroundResId;
+            mOwner = owner;
+            if (owner.mTabBackgroundResId != oldBackgroundResId) {
+                ViewCompat.setBackground(this, owner.mTabBackgroundResId != 0
+                        ? AppCompatResources.getDrawable(getContext(), owner.mTabBackgroundResId)
+                        : null);
+            }
+            // The text paints and the measured sizes are for the old owner's text appearance
+            if (mFlat) {
+                setFlat(false);
+            }
+            mMeasureCache.clear();
+        }
+
+        boolean isFlat() {
+            return mFlat;
+        }
+
         @Override
         public boolean performClick() {
             final boolean handled = super.performClick();
@@ -1528,7 +2676,14 @@ public class XTabLayout extends HorizontalScrollView {
                 if (!handled) {
                     playSoundEffect(SoundEffectConstants.CLICK);
                 }
+                final boolean measure = mOwner.mSwitchMetricsListener != null;
+                if (measure) {
+                    mOwner.mSwitchTapTime = System.nanoTime();
+                }
                 mTab.select();
+                if (measure) {
+                    mOwner.mSwitchTapTime = -1;
+                }
                 return true;
             } else {
                 return handled;
@@ -1577,9 +2732,33 @@ public class XTabLayout extends HorizontalScrollView {
 
         @Override
         public void onMeasure(final int origWidthMeasureSpec, final int origHeightMeasureSpec) {
+            final boolean trace = sTraceEnabled;
+            if (trace) {
+                TraceCompat.beginSection(TRACE_TAB_VIEW_MEASURE);
+            }
+            if (mOwner.mLayoutPassStats != null) {
+                mOwner.onMeasurePass(LayoutPassStats.VIEW_TAB_VIEW);
+                mMeasurePasses++;
+            }
+            measureTab(origWidthMeasureSpec, origHeightMeasureSpec);
+            if (trace) {
+                TraceCompat.endSection();
+            }
+        }
+
+        @Override
+        protected void onLayout(boolean changed, int l, int t, int r, int b) {
+            super.onLayout(changed, l, t, r, b);
+            if (mOwner.mLayoutPassStats != null) {
+                mOwner.onLayoutPass(LayoutPassStats.VIEW_TAB_VIEW);
+                mLayoutPasses++;
+            }
+        }
+
+        private void measureTab(final int origWidthMeasureSpec, final int origHeightMeasureSpec) {
             final int specWidthSize = MeasureSpec.getSize(origWidthMeasureSpec);
             final int specWidthMode = MeasureSpec.getMode(origWidthMeasureSpec);
-            final int maxWidth = getTabMaxWidth();
+            final int maxWidth = mOwner.getTabMaxWidth();
 
             final int widthMeasureSpec;
             final int heightMeasureSpec = origHeightMeasureSpec;
@@ -1588,19 +2767,55 @@ public class XTabLayout extends HorizontalScrollView {
                     || specWidthSize > maxWidth)) {
                 // If we have a max width and a given spec which is either unspecified or
                 // larger than the max width, update the width spec using the same mode
-                widthMeasureSpec = MeasureSpec.makeMeasureSpec(mTabMaxWidth, MeasureSpec.AT_MOST);
+                widthMeasureSpec = MeasureSpec.makeMeasureSpec(mOwner.mTabMaxWidth,
+                        MeasureSpec.AT_MOST);
             } else {
                 // Else, use the original width spec
                 widthMeasureSpec = origWidthMeasureSpec;
             }
 
+            if (mFlat) {
+                measureFlat(widthMeasureSpec, heightMeasureSpec);
+                return;
+            }
+
+            // Without a custom view our content is known, so we can look up the outcome of a
+            // previous pass with the same inputs. A match applies the text size and max lines
+            // that pass settled on, so our children are measured once rather than a second time
+            // after switching to the multi-line size. They are always measured, though
+            final boolean cacheable = mCustomView == null && mTextView != null;
+            final CharSequence text = cacheable ? mTextView.getText() : null;
+            final boolean hasIcon = mIconView != null && mIconView.getVisibility() == VISIBLE;
+            final TabMeasureCache.Entry entry = cacheable
+                    ? mMeasureCache.find(text, mOwner.mTabTextAppearance, hasIcon, mOwner.mMode,
+                    widthMeasureSpec, heightMeasureSpec)
+                    : null;
+
+            if (entry != null) {
+                // We already know which text size and max lines these inputs end up with
+                if (mTextView.getTextSize() != entry.mTextSize) {
+                    mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, entry.mTextSize);
+                }
+                if (TextViewCompat.getMaxLines(mTextView) != entry.mMaxLines) {
+                    mTextView.setMaxLines(entry.mMaxLines);
+                }
+                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+                mMeasureCache.setMostRecent(entry);
+                return;
+            }
+
+            if (cacheable && !hasIcon) {
+                // If the text was measured up front, start with the text size it ends up with
+                applyPrecomputedTextSize(text, widthMeasureSpec);
+            }
+
             // Now lets measure
             super.onMeasure(widthMeasureSpec, heightMeasureSpec);
 
             // We need to switch the text size based on whether the text is spanning 2 lines or not
             if (mTextView != null) {
                 final Resources res = getResources();
-                float textSize = mTabTextSize;
+                float textSize = mOwner.mTabTextSize;
                 int maxLines = mDefaultMaxLines;
 
                 if (mIconView != null && mIconView.getVisibility() == VISIBLE) {
@@ -1608,7 +2823,7 @@ public class XTabLayout extends HorizontalScrollView {
                     maxLines = 1;
                 } else if (mTextView != null && mTextView.getLineCount() > 1) {
                     // Otherwise when we have text which wraps we reduce the text size
-                    textSize = mTabTextMultiLineSize;
+                    textSize = mOwner.mTabTextMultiLineSize;
                 }
 
                 final float curTextSize = mTextView.getTextSize();
@@ -1619,7 +2834,7 @@ public class XTabLayout extends HorizontalScrollView {
                     // We've got a new text size and/or max lines...
                     boolean updateTextView = true;
 
-                    if (mMode == MODE_FIXED && textSize > curTextSize && curLineCount == 1) {
+                    if (mOwner.mMode == MODE_FIXED && textSize > curTextSize && curLineCount == 1) {
                         // If we're in fixed mode, going up in text size and currently have 1 line
                         // then it's very easy to get into an infinite recursion.
                         // To combat that we check to see if the change in text size
@@ -1639,6 +2854,55 @@ public class XTabLayout extends HorizontalScrollView {
                     }
                 }
             }
+
+            if (cacheable) {
+                final TabMeasureCache.Entry newEntry = mMeasureCache.obtain();
+                newEntry.set(text, mOwner.mTabTextAppearance, hasIcon, mOwner.mMode,
+                        widthMeasureSpec, heightMeasureSpec);
+                newEntry.mTextSize = mTextView.getTextSize();
+                newEntry.mMaxLines = TextViewCompat.getMaxLines(mTextView);
+                mMeasureCache.setMostRecent(newEntry);
+            }
+        }
+
+        private void applyPrecomputedTextSize(CharSequence text, int widthMeasureSpec) {
+            // The titles were measured as shown, so look up what our text view shows
+            final TabTextPrecomputer.Metrics metrics = mOwner.mTextPrecomputer != null
+                    ? mOwner.mTextPrecomputer.get(getDisplayedText(text, mTextView),
+                    mOwner.mTabTextAppearance, mOwner.mTabTextSize, mOwner.mTabTextMultiLineSize)
+                    : null;
+            if (metrics == null
+                    || MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED) {
+                return;
+            }
+
+            final int availableWidth = MeasureSpec.getSize(widthMeasureSpec)
+                    - getPaddingLeft() - getPaddingRight()
+                    - mTextView.getCompoundPaddingLeft() - mTextView.getCompoundPaddingRight();
+            final float textSize;
+            if (metrics.mWidth <= availableWidth) {
+                // Fits on one line
+                textSize = mOwner.mTabTextSize;
+            } else if (metrics.mMultiLineWidth > availableWidth) {
+                // Wraps at either size, so we'll end up with the multi-line size
+                textSize = mOwner.mTabTextMultiLineSize;
+            } else {
+                // Leave the in-between case to the measure below
+                return;
+            }
+            if (mTextView.getTextSize() != textSize) {
+                mTextView.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
+            }
+        }
+
+        @Override
+        public void requestLayout() {
+            super.requestLayout();
+            final ViewParent parent = getParent();
+            if (parent instanceof SlidingTabStrip) {
+                // Our width might have changed, which GRAVITY_CENTER sizes all tabs to
+                ((SlidingTabStrip) parent).invalidateWidestTab();
+            }
         }
 
         void setTab(@Nullable final Tab tab) {
@@ -1654,6 +2918,10 @@ public class XTabLayout extends HorizontalScrollView {
         }
 
         final void update() {
+            final boolean trace = sTraceEnabled;
+            if (trace) {
+                TraceCompat.beginSection(TRACE_TAB_VIEW_UPDATE);
+            }
             final Tab tab = mTab;
             final View custom = tab != null ? tab.getCustomView() : null;
             if (custom != null) {
@@ -1688,7 +2956,15 @@ public class XTabLayout extends HorizontalScrollView {
                 mCustomIconView = null;
             }
 
-            if (mCustomView == null) {
+            final boolean flat = mCustomView == null && mOwner.mFlatTabViewsEnabled;
+            if (flat != mFlat) {
+                setFlat(flat);
+            }
+
+            if (mFlat) {
+                // We draw the text and icon ourselves
+                updateFlatTextAndIcon();
+            } else if (mCustomView == null) {
                 // If there isn't a custom view, we'll us our own in-built layouts
                 if (mIconView == null) {
                     ImageView iconView = (ImageView) LayoutInflater.from(getContext())
@@ -1703,9 +2979,9 @@ public class XTabLayout extends HorizontalScrollView {
                     mTextView = textView;
                     mDefaultMaxLines = TextViewCompat.getMaxLines(mTextView);
                 }
-                TextViewCompat.setTextAppearance(mTextView, mTabTextAppearance);
-                if (mTabTextColors != null) {
-                    mTextView.setTextColor(mTabTextColors);
+                TextViewCompat.setTextAppearance(mTextView, mOwner.mTabTextAppearance);
+                if (mOwner.mTabTextColors != null) {
+                    mTextView.setTextColor(mOwner.mTabTextColors);
                 }
                 updateTextAndIcon(mTextView, mIconView);
             } else {
@@ -1715,8 +2991,11 @@ public class XTabLayout extends HorizontalScrollView {
                 }
             }
 
-            // Finally update our selected state
-            setSelected(tab != null && tab.isSelected());
+            // Finally update our selected state, in step with the layout's other tab views
+            setSelected(mOwner.updateSelectedTabView(this));
+            if (trace) {
+                TraceCompat.endSection();
+            }
         }
 
         private void updateTextAndIcon(@Nullable final TextView textView,
@@ -1755,7 +3034,7 @@ public class XTabLayout extends HorizontalScrollView {
                 int bottomMargin = 0;
                 if (hasText && iconView.getVisibility() == VISIBLE) {
                     // If we're showing both text and icon, add some margin bottom to the icon
-                    bottomMargin = dpToPx(DEFAULT_GAP_TEXT_ICON);
+                    bottomMargin = mOwner.dpToPx(DEFAULT_GAP_TEXT_ICON);
                 }
                 if (bottomMargin != lp.bottomMargin) {
                     lp.bottomMargin = bottomMargin;
@@ -1771,52 +3050,374 @@ public class XTabLayout extends HorizontalScrollView {
             }
         }
 
-        @Override
-        public boolean onLongClick(final View v) {
-            final int[] screenPos = new int[2];
-            final Rect displayFrame = new Rect();
-            getLocationOnScreen(screenPos);
-            getWindowVisibleDisplayFrame(displayFrame);
-
-            final Context context = getContext();
-            final int width = getWidth();
-            final int height = getHeight();
-            final int midy = screenPos[1] + height / 2;
-            int referenceX = screenPos[0] + width / 2;
-            if (ViewCompat.getLayoutDirection(v) == ViewCompat.LAYOUT_DIRECTION_LTR) {
-                final int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
-                referenceX = screenWidth - referenceX; // mirror
-            }
-
-            Toast cheatSheet = Toast.makeText(context, mTab.getContentDescription(),
-                    Toast.LENGTH_SHORT);
-            if (midy < displayFrame.height()) {
-                // Show below the tab view
-                cheatSheet.setGravity(Gravity.TOP | GravityCompat.END, referenceX,
-                        screenPos[1] + height - displayFrame.top);
+        private void setFlat(boolean flat) {
+            mFlat = flat;
+            if (flat) {
+                // Our content views are replaced by what we draw
+                if (mIconView != null) {
+                    removeView(mIconView);
+                    mIconView = null;
+                }
+                if (mTextView != null) {
+                    removeView(mTextView);
+                    mTextView = null;
+                }
+                mDefaultMaxLines = 2; // as in design_layout_tab_text
+                final TextPaint paint = mOwner.getTabTextProbe().getPaint();
+                mFlatTextPaint = new TextPaint(paint);
+                mFlatTextPaint.setTextSize(mOwner.mTabTextSize);
+                mFlatMultiLineTextPaint = new TextPaint(paint);
+                mFlatMultiLineTextPaint.setTextSize(mOwner.mTabTextMultiLineSize);
             } else {
-                // Show along the bottom center
-                cheatSheet.setGravity(Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL, 0, height);
+                setFlatIcon(null);
+                mFlatText = null;
+                mFlatTextLayout = null;
+                mFlatTextPaint = null;
+                mFlatMultiLineTextPaint = null;
+                setContentDescription(null);
             }
-            cheatSheet.show();
-            return true;
+            setWillNotDraw(!flat && getBackground() == null);
         }
 
-        public Tab getTab() {
-            return mTab;
-        }
+        private void updateFlatTextAndIcon() {
+            final Drawable icon = mTab != null ? mTab.getIcon() : null;
+            final CharSequence text = mTab != null ? mTab.getText() : null;
+            final CharSequence contentDesc = mTab != null ? mTab.getContentDescription() : null;
+            final boolean hasText = !TextUtils.isEmpty(text);
 
-        /**
-         * Approximates a given lines width with the new provided text size.
+            setFlatIcon(icon);
+
+            // Apply the text appearance's transformation, i.e. all caps, as a text view would
+            final CharSequence flatText = getDisplayedText(text, mOwner.getTabTextProbe());
+            mFlatText = flatText;
+            // Whether we have an icon decides the max lines, so we lay the text out again
+            mFlatTextLayout = null;
+
+            if (icon != null || hasText) {
+                setVisibility(VISIBLE);
+            }
+            // We don't have a text view to read, so we are what accessibility services read
+            setContentDescription(!TextUtils.isEmpty(contentDesc) ? contentDesc : text);
+
+            if (!hasText && !TextUtils.isEmpty(contentDesc)) {
+                setOnLongClickListener(this);
+            } else {
+                setOnLongClickListener(null);
+                setLongClickable(false);
+            }
+
+            updateFlatTextColor();
+            requestLayout();
+            invalidate();
+        }
+
+        private void setFlatIcon(@Nullable Drawable icon) {
+            if (mFlatIcon == icon) {
+                return;
+            }
+            if (mFlatIcon != null) {
+                mFlatIcon.setCallback(null);
+                unscheduleDrawable(mFlatIcon);
+            }
+            mFlatIcon = icon;
+            if (icon != null) {
+                icon.setCallback(this);
+                if (icon.isStateful()) {
+                    icon.setState(getDrawableState());
+                }
+            }
+        }
+
+        private void updateFlatTextColor() {
+            final ColorStateList colors = mOwner.mTabTextColors != null
+                    ? mOwner.mTabTextColors
+                    : mOwner.getTabTextProbe().getTextColors();
+            if (colors == null) {
+                return;
+            }
+            final int color = colors.getColorForState(getDrawableState(),
+                    colors.getDefaultColor());
+            if (color != mFlatTextPaint.getColor()) {
+                mFlatTextPaint.setColor(color);
+                mFlatMultiLineTextPaint.setColor(color);
+                invalidate();
+            }
+        }
+
+        /**
+         * Measures the content we draw ourselves the way the LinearLayout measures our icon and
+         * text views, including the text sizing of {@link #onMeasure(int, int)}.
+         */
+        private void measureFlat(int widthMeasureSpec, int heightMeasureSpec) {
+            final int paddingHorizontal = getPaddingLeft() + getPaddingRight();
+            final int paddingVertical = getPaddingTop() + getPaddingBottom();
+            final boolean hasText = !TextUtils.isEmpty(mFlatText);
+
+            int contentWidth = 0;
+            int contentHeight = 0;
+            if (mFlatIcon != null) {
+                contentWidth = contentHeight = mOwner.dpToPx(FLAT_TAB_ICON_SIZE);
+                if (hasText) {
+                    contentHeight += mOwner.dpToPx(DEFAULT_GAP_TEXT_ICON);
+                }
+            }
+
+            if (hasText) {
+                final int availableWidth =
+                        MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.UNSPECIFIED
+                                ? Integer.MAX_VALUE
+                                : Math.max(0, MeasureSpec.getSize(widthMeasureSpec)
+                                - paddingHorizontal);
+                if (mFlatTextLayout == null || availableWidth != mFlatTextLayoutWidth) {
+                    mFlatTextLayout = createFlatTextLayout(availableWidth);
+                    mFlatTextLayoutWidth = availableWidth;
+                }
+                contentWidth = Math.max(contentWidth, mFlatTextLayout.getWidth());
+                contentHeight += mFlatTextLayout.getHeight();
+            } else {
+                mFlatTextLayout = null;
+            }
+
+            setMeasuredDimension(
+                    resolveSizeAndState(Math.max(contentWidth + paddingHorizontal,
+                            getSuggestedMinimumWidth()), widthMeasureSpec, 0),
+                    resolveSizeAndState(Math.max(contentHeight + paddingVertical,
+                            getSuggestedMinimumHeight()), heightMeasureSpec, 0));
+        }
+
+        private Layout createFlatTextLayout(int availableWidth) {
+            final CharSequence text = mFlatText;
+            final int maxLines = mFlatIcon != null ? 1 : mDefaultMaxLines;
+
+            // With an icon we limit the text to 1 line, else wrapping text gets the smaller size
+            final int width = (int) Math.ceil(Layout.getDesiredWidth(text, mFlatTextPaint));
+            if (width <= availableWidth || maxLines == 1) {
+                final CharSequence line = width <= availableWidth ? text
+                        : TextUtils.ellipsize(text, mFlatTextPaint, availableWidth,
+                        TextUtils.TruncateAt.END);
+                return new StaticLayout(line, mFlatTextPaint, Math.min(width, availableWidth),
+                        Layout.Alignment.ALIGN_CENTER, 1f, 0f, true);
+            }
+
+            final TextPaint paint = mFlatMultiLineTextPaint;
+            final int multiLineWidth = Math.min(availableWidth,
+                    (int) Math.ceil(Layout.getDesiredWidth(text, paint)));
+            Layout layout = new StaticLayout(text, paint, multiLineWidth,
+                    Layout.Alignment.ALIGN_CENTER, 1f, 0f, true);
+            if (layout.getLineCount() > maxLines) {
+                // Ellipsize the last line we show, as the text view's ellipsize="end" does
+                final int lastLineStart = layout.getLineStart(maxLines - 1);
+                final CharSequence lastLine = TextUtils.ellipsize(
+                        text.subSequence(lastLineStart, text.length()), paint, multiLineWidth,
+                        TextUtils.TruncateAt.END);
+                layout = new StaticLayout(
+                        TextUtils.concat(text.subSequence(0, lastLineStart), lastLine), paint,
+                        multiLineWidth, Layout.Alignment.ALIGN_CENTER, 1f, 0f, true);
+            }
+            return layout;
+        }
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            super.onDraw(canvas);
+            if (!mFlat) {
+                return;
+            }
+
+            // We're a vertical LinearLayout with Gravity.BOTTOM, so the icon and text are
+            // stacked at the bottom, each at our start
+            final Layout textLayout = mFlatTextLayout;
+            int top = getHeight() - getPaddingBottom();
+            if (textLayout != null) {
+                top -= textLayout.getHeight();
+            }
+            if (mFlatIcon != null) {
+                final int iconSize = mOwner.dpToPx(FLAT_TAB_ICON_SIZE);
+                final int iconBottom = textLayout != null
+                        ? top - mOwner.dpToPx(DEFAULT_GAP_TEXT_ICON)
+                        : top;
+                drawFlatIcon(canvas, getPaddingLeft(), iconBottom - iconSize, iconSize);
+            }
+            if (textLayout != null) {
+                final int saveCount = canvas.save();
+                canvas.translate(getPaddingLeft(), top);
+                textLayout.draw(canvas);
+                canvas.restoreToCount(saveCount);
+            }
+        }
+
+        /**
+         * Draws the icon within a square box, scaled as ImageView's centerInside would.
+         */
+        private void drawFlatIcon(Canvas canvas, int left, int top, int size) {
+            final Drawable icon = mFlatIcon;
+            int width = icon.getIntrinsicWidth();
+            int height = icon.getIntrinsicHeight();
+            if (width <= 0 || height <= 0) {
+                width = height = size;
+            } else if (width > size || height > size) {
+                final float scale = Math.min((float) size / width, (float) size / height);
+                width = Math.round(width * scale);
+                height = Math.round(height * scale);
+            }
+            final int iconLeft = left + (size - width) / 2;
+            final int iconTop = top + (size - height) / 2;
+            icon.setBounds(iconLeft, iconTop, iconLeft + width, iconTop + height);
+            icon.draw(canvas);
+        }
+
+        @Override
+        protected void drawableStateChanged() {
+            super.drawableStateChanged();
+            if (mFlat) {
+                if (mFlatIcon != null && mFlatIcon.isStateful()
+                        && mFlatIcon.setState(getDrawableState())) {
+                    invalidate();
+                }
+                updateFlatTextColor();
+            }
+        }
+
+        @Override
+        protected boolean verifyDrawable(@NonNull Drawable who) {
+            return super.verifyDrawable(who) || who == mFlatIcon;
+        }
+
+        @Override
+        public void jumpDrawablesToCurrentState() {
+            super.jumpDrawablesToCurrentState();
+            if (mFlatIcon != null) {
+                mFlatIcon.jumpToCurrentState();
+            }
+        }
+
+        @Override
+        public boolean onLongClick(final View v) {
+            final int[] screenPos = new int[2];
+            final Rect displayFrame = new Rect();
+            getLocationOnScreen(screenPos);
+            getWindowVisibleDisplayFrame(displayFrame);
+
+            final Context context = getContext();
+            final int width = getWidth();
+            final int height = getHeight();
+            final int midy = screenPos[1] + height / 2;
+            int referenceX = screenPos[0] + width / 2;
+            if (ViewCompat.getLayoutDirection(v) == ViewCompat.LAYOUT_DIRECTION_LTR) {
+                final int screenWidth = context.getResources().getDisplayMetrics().widthPixels;
+                referenceX = screenWidth - referenceX; // mirror
+            }
+
+            Toast cheatSheet = Toast.makeText(context, mTab.getContentDescription(),
+                    Toast.LENGTH_SHORT);
+            if (midy < displayFrame.height()) {
+                // Show below the tab view
+                cheatSheet.setGravity(Gravity.TOP | GravityCompat.END, referenceX,
+                        screenPos[1] + height - displayFrame.top);
+            } else {
+                // Show along the bottom center
+                cheatSheet.setGravity(Gravity.BOTTOM | Gravity.CENTER_HORIZONTAL, 0, height);
+            }
+            cheatSheet.show();
+            return true;
+        }
+
+        public Tab getTab() {
+            return mTab;
+        }
+
+        /**
+         * Approximates a given lines width with the new provided text size.
          */
         private float approximateLineWidth(Layout layout, int line, float textSize) {
             return layout.getLineWidth(line) * (textSize / layout.getPaint().getTextSize());
         }
     }
 
+    /**
+     * The outcome of the last {@link TabView} measure passes: the text size and max lines which
+     * were chosen for the text, keyed on the inputs of the pass.
+     */
+    static final class TabMeasureCache {
+        // A LinearLayout can measure a child with two different specs within one pass
+        private final Entry[] mEntries = {new Entry(), new Entry()};
+        private Entry mMostRecent;
+
+        static final class Entry {
+            private boolean mValid;
+            private CharSequence mText;
+            private int mTextAppearance;
+            private boolean mHasIcon;
+            private int mMode;
+            private int mWidthMeasureSpec;
+            private int mHeightMeasureSpec;
+
+            float mTextSize;
+            int mMaxLines;
+
+            void set(CharSequence text, int textAppearance, boolean hasIcon, int mode,
+                     int widthMeasureSpec, int heightMeasureSpec) {
+                mValid = true;
+                mText = text;
+                mTextAppearance = textAppearance;
+                mHasIcon = hasIcon;
+                mMode = mode;
+                mWidthMeasureSpec = widthMeasureSpec;
+                mHeightMeasureSpec = heightMeasureSpec;
+            }
+
+            boolean matches(CharSequence text, int textAppearance, boolean hasIcon, int mode,
+                            int widthMeasureSpec, int heightMeasureSpec) {
+                return mValid
+                        && mWidthMeasureSpec == widthMeasureSpec
+                        && mHeightMeasureSpec == heightMeasureSpec
+                        && mHasIcon == hasIcon
+                        && mMode == mode
+                        && mTextAppearance == textAppearance
+                        && TextUtils.equals(mText, text);
+            }
+        }
+
+        @Nullable
+        Entry find(CharSequence text, int textAppearance, boolean hasIcon, int mode,
+                   int widthMeasureSpec, int heightMeasureSpec) {
+            for (Entry entry : mEntries) {
+                if (entry.matches(text, textAppearance, hasIcon, mode,
+                        widthMeasureSpec, heightMeasureSpec)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        void clear() {
+            for (Entry entry : mEntries) {
+                entry.mValid = false;
+                entry.mText = null;
+            }
+            mMostRecent = null;
+        }
+
+        /**
+         * Returns the entry to overwrite with a new pass, which is the least recently used one.
+         */
+        Entry obtain() {
+            return mEntries[0] == mMostRecent ? mEntries[1] : mEntries[0];
+        }
+
+        /**
+         * Marks the entry the last pass used, so that {@link #obtain()} keeps it.
+         */
+        void setMostRecent(Entry entry) {
+            mMostRecent = entry;
+        }
+    }
+
     private class SlidingTabStrip extends LinearLayout {
+        // Draws the indicator, see setIndicatorPosition()
+        final View mIndicatorView;
         private int mSelectedIndicatorHeight;
-        private final Paint mSelectedIndicatorPaint;
+        private int mSelectedIndicatorColor;
 
         int mSelectedPosition = -1;
         float mSelectionOffset;
@@ -1824,43 +3425,134 @@ public class XTabLayout extends HorizontalScrollView {
         private int mIndicatorLeft = -1;
         private int mIndicatorRight = -1;
 
-        private ValueAnimatorCompat mIndicatorAnimator;
+        // Where the indicator moves from and to during a tab transition
+        private boolean mIndicatorAnimating;
+        private int mIndicatorStartLeft;
+        private int mIndicatorStartRight;
+        private float mIndicatorStartFraction;
+        private int mIndicatorTargetLeft;
+        private int mIndicatorTargetRight;
+
+        // Tab view virtualization, see setTabViewVirtualizationEnabled()
+        private boolean mVirtualizing;
+        private int[] mTabOffsets = new int[1]; // left of every tab, plus the end of the last one
+        private int mOffsetsTabCount = -1; // -1 when the offsets need to be measured again
+        private int mOffsetsHeightMeasureSpec;
+        private int mOffsetsTabMaxWidth;
+        private int mTabsMeasuredHeight;
+        private TabView mScrapTabView; // used to measure tabs without a bound view
+        private final ArrayList<Tab> mDirtyTabs = new ArrayList<>(); // see onTabChanged()
+        // Whether a child had no width at the last layout, or has been added since
+        private boolean mHasUnlaidChild;
+
+        // Width of the widest tab for GRAVITY_CENTER, see measureCenteredTabs()
+        private int mWidestTabWidth = INVALID_WIDTH;
+        // Our width and the tab max width the widest tab was found with
+        private int mWidestTabSpecWidth;
+        private int mWidestTabMaxWidth;
+
+        // The gap kept between the two middle tabs for the center tab, see reserveCenterSlot()
+        int mCenterSlotWidth;
+        private View mCenterSlotStartView;
+        private View mCenterSlotEndView;
 
         SlidingTabStrip(Context context) {
             super(context);
             setClipChildren(false);
             setWillNotDraw(false);
-            mSelectedIndicatorPaint = new Paint();
+            mIndicatorView = new View(context);
+            mIndicatorView.setPivotX(0);
+            mIndicatorView.setScaleX(0);
+            ViewCompat.setImportantForAccessibility(mIndicatorView,
+                    ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_NO);
+            setOnHierarchyChangeListener(new OnHierarchyChangeListener() {
+                @Override
+                public void onChildViewAdded(View parent, View child) {
+                    // A new child doesn't have a width until we've been laid out
+                    mHasUnlaidChild = true;
+                    invalidateWidestTab();
+                }
+
+                @Override
+                public void onChildViewRemoved(View parent, View child) {
+                    invalidateWidestTab();
+                }
+            });
         }
 
         void setSelectedIndicatorColor(int color) {
-            if (mSelectedIndicatorPaint.getColor() != color) {
-                mSelectedIndicatorPaint.setColor(color);
-                ViewCompat.postInvalidateOnAnimation(this);
+            if (mSelectedIndicatorColor != color || mIndicatorView.getBackground() == null) {
+                mSelectedIndicatorColor = color;
+                mIndicatorView.setBackgroundColor(color);
             }
         }
 
+        /**
+         * Makes our children the views of the current tabs, in order, with a single layout
+         * request. Views which are kept are re-attached rather than removed and added again.
+         */
+        void setTabViews() {
+            final HashSet<View> oldChildren = new HashSet<>();
+            for (int i = 0, count = getChildCount(); i < count; i++) {
+                oldChildren.add(getChildAt(i));
+            }
+            detachAllViewsFromParent();
+
+            for (int i = 0, count = mTabs.size(); i < count; i++) {
+                final Tab tab = mTabs.get(i);
+                if (tab.mView == null) {
+                    tab.mView = createTabView(tab);
+                }
+                final TabView tabView = tab.mView;
+                if (oldChildren.remove(tabView)) {
+                    attachViewToParent(tabView, i, tabView.getLayoutParams());
+                } else {
+                    addViewInLayout(tabView, i, createLayoutParamsForTabs(), true);
+                }
+            }
+
+            // Whatever is left belonged to removed tabs
+            for (View child : oldChildren) {
+                removeDetachedView(child, false);
+                if (child instanceof TabView) {
+                    final TabView tabView = (TabView) child;
+                    tabView.reset();
+                    releaseTabView(tabView);
+                }
+            }
+
+            requestLayout();
+            invalidate();
+        }
+
+        /**
+         * Moves an attached tab view to {@code index} without removing it from the window.
+         */
+        void moveTabView(View child, int index) {
+            detachViewFromParent(child);
+            attachViewToParent(child, index, child.getLayoutParams());
+            requestLayout();
+            invalidate();
+        }
+
         void setSelectedIndicatorHeight(int height) {
             if (mSelectedIndicatorHeight != height) {
                 mSelectedIndicatorHeight = height;
-                ViewCompat.postInvalidateOnAnimation(this);
+                mIndicatorView.getLayoutParams().height = height;
+                mIndicatorView.requestLayout();
             }
         }
 
         boolean childrenNeedLayout() {
-            for (int i = 0, z = getChildCount(); i < z; i++) {
-                final View child = getChildAt(i);
-                if (child.getWidth() <= 0) {
-                    return true;
-                }
+            if (mVirtualizing) {
+                return mOffsetsTabCount != mTabs.size() || isLayoutRequested();
             }
-            return false;
+            // Child widths only change in onLayout(), which keeps track of this
+            return mHasUnlaidChild;
         }
 
         void setIndicatorPositionFromTabPosition(int position, float positionOffset) {
-            if (mIndicatorAnimator != null && mIndicatorAnimator.isRunning()) {
-                mIndicatorAnimator.cancel();
-            }
+            cancelTabTransition();
 
             mSelectedPosition = position;
             mSelectionOffset = positionOffset;
@@ -1871,94 +3563,518 @@ public class XTabLayout extends HorizontalScrollView {
             return mSelectedPosition + mSelectionOffset;
         }
 
+        boolean isVirtualizing() {
+            return mVirtualizing;
+        }
+
+        void setVirtualizing(boolean virtualizing) {
+            mVirtualizing = virtualizing;
+            mOffsetsTabCount = -1;
+            clearDirtyTabs();
+            requestLayout();
+        }
+
+        /**
+         * Marks the cached tab widths as stale. Only used while virtualizing.
+         */
+        void onTabsChanged() {
+            mOffsetsTabCount = -1;
+            clearDirtyTabs();
+            requestLayout();
+        }
+
+        /**
+         * Marks the cached width of a single tab as stale, e.g. after its text has changed.
+         * Only that tab is measured again, see {@link #measureDirtyTabs(int)}. Only used while
+         * virtualizing.
+         */
+        void onTabChanged(Tab tab) {
+            if (mOffsetsTabCount >= 0 && !tab.mOffsetDirty) {
+                tab.mOffsetDirty = true;
+                mDirtyTabs.add(tab);
+            }
+            requestLayout();
+        }
+
+        private void clearDirtyTabs() {
+            for (int i = 0, count = mDirtyTabs.size(); i < count; i++) {
+                mDirtyTabs.get(i).mOffsetDirty = false;
+            }
+            mDirtyTabs.clear();
+        }
+
+        int getTabCount() {
+            return mVirtualizing ? mTabs.size() : getChildCount();
+        }
+
+        /**
+         * Returns the view showing the tab at {@code position}, or {@code null} if it's unbound.
+         */
+        View getTabViewAt(int position) {
+            if (mVirtualizing) {
+                return position >= 0 && position < mTabs.size() ? mTabs.get(position).mView : null;
+            }
+            return getChildAt(position);
+        }
+
+        int getTabLeft(int position) {
+            if (mVirtualizing) {
+                return hasTabOffsets(position) ? getPaddingLeft() + mTabOffsets[position] : 0;
+            }
+            final View child = getChildAt(position);
+            return child != null ? child.getLeft() : 0;
+        }
+
+        int getTabRight(int position) {
+            if (mVirtualizing) {
+                return hasTabOffsets(position) ? getPaddingLeft() + mTabOffsets[position + 1] : 0;
+            }
+            final View child = getChildAt(position);
+            return child != null ? child.getRight() : 0;
+        }
+
+        int getTabWidth(int position) {
+            return getTabRight(position) - getTabLeft(position);
+        }
+
+        /**
+         * Returns the tab position shown by the given child at {@code index}.
+         */
+        int getTabPositionOf(View child, int index) {
+            if (mVirtualizing) {
+                final Tab tab = child instanceof TabView ? ((TabView) child).getTab() : null;
+                return tab != null ? tab.getPosition() : Tab.INVALID_POSITION;
+            }
+            return index;
+        }
+
+        private boolean hasTabOffsets(int position) {
+            return position >= 0 && position < mOffsetsTabCount;
+        }
+
         @Override
         protected void onMeasure(final int widthMeasureSpec, final int heightMeasureSpec) {
-            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            final boolean trace = sTraceEnabled;
+            if (trace) {
+                TraceCompat.beginSection(TRACE_STRIP_MEASURE);
+            }
+            onMeasurePass(LayoutPassStats.VIEW_TAB_STRIP);
+            measureTabs(widthMeasureSpec, heightMeasureSpec);
+            if (trace) {
+                TraceCompat.endSection();
+            }
+        }
 
-            if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.EXACTLY) {
-                // HorizontalScrollView will first measure use with UNSPECIFIED, and then with
-                // EXACTLY. Ignore the first call since anything we do will be overwritten anyway
+        private void measureTabs(final int widthMeasureSpec, final int heightMeasureSpec) {
+            if (mVirtualizing) {
+                mCenterSlotWidth = 0;
+                measureVirtualTabs(widthMeasureSpec, heightMeasureSpec);
                 return;
             }
 
-            if (mMode == MODE_FIXED && mTabGravity == GRAVITY_CENTER) {
-                final int count = getChildCount();
+            final boolean slotFollowsContent = reserveCenterSlot(widthMeasureSpec);
+            if (mMode == MODE_FIXED && mTabGravity == GRAVITY_CENTER
+                    && MeasureSpec.getMode(widthMeasureSpec) == MeasureSpec.EXACTLY) {
+                measureCenteredTabs(widthMeasureSpec, heightMeasureSpec);
+            } else {
+                // Without an exact width we're measured at our natural width, which the
+                // gravity doesn't apply to
+                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+                if (slotFollowsContent) {
+                    fitCenterSlotToContent(widthMeasureSpec, heightMeasureSpec);
+                }
+            }
+        }
+
+        /**
+         * Measures the tabs for {@link #GRAVITY_CENTER}, all as wide as the widest tab, or
+         * filling our width when they don't fit. The widest tab is only looked for again once
+         * the tabs or the width available to them have changed, so passes which don't change
+         * either, e.g. when a sibling requests a layout, are a single pass.
+         */
+        private void measureCenteredTabs(int widthMeasureSpec, int heightMeasureSpec) {
+            // Tabs are measured at their natural width within what is left of our width, and
+            // no wider than the tab max width. Either can cut a tab short, so what we found is
+            // only the widest tab's natural width for the width it was found with
+            final int specWidth = MeasureSpec.getSize(widthMeasureSpec);
+            if (specWidth != mWidestTabSpecWidth || getTabMaxWidth() != mWidestTabMaxWidth) {
+                mWidestTabWidth = INVALID_WIDTH;
+            }
+
+            boolean measured = false;
+            if (mWidestTabWidth == INVALID_WIDTH) {
+                // Measure the tabs at their natural width to find the widest one
+                setTabWidths(LayoutParams.WRAP_CONTENT, 0);
+                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+                measured = true;
 
-                // First we'll find the widest tab
-                int largestTabWidth = 0;
-                for (int i = 0, z = count; i < z; i++) {
+                int widestTabWidth = 0;
+                for (int i = 0, z = getChildCount(); i < z; i++) {
                     View child = getChildAt(i);
                     if (child.getVisibility() == VISIBLE) {
-                        largestTabWidth = Math.max(largestTabWidth, child.getMeasuredWidth());
+                        widestTabWidth = Math.max(widestTabWidth, child.getMeasuredWidth());
                     }
                 }
-
-                if (largestTabWidth <= 0) {
-                    // If we don't have a largest child yet, skip until the next measure pass
+                if (widestTabWidth <= 0) {
+                    // If we don't have a widest tab yet, skip until the next measure pass
                     return;
                 }
+                mWidestTabWidth = widestTabWidth;
+                mWidestTabSpecWidth = specWidth;
+                mWidestTabMaxWidth = getTabMaxWidth();
+            }
 
-                final int gutter = dpToPx(FIXED_WRAP_GUTTER_MIN);
-                boolean remeasure = false;
-
-                if (largestTabWidth * count <= getMeasuredWidth() - gutter * 2) {
-                    // If the tabs fit within our width minus gutters, we will set all tabs to have
-                    // the same width
-                    for (int i = 0; i < count; i++) {
-                        final LayoutParams lp =
-                                (LayoutParams) getChildAt(i).getLayoutParams();
-                        if (lp.width != largestTabWidth || lp.weight != 0) {
-                            lp.width = largestTabWidth;
-                            lp.weight = 0;
-                            remeasure = true;
-                        }
-                    }
+            // If the tabs fit within our width minus gutters, we will set all tabs to have the
+            // same width. Otherwise they fill our width, until they fit again
+            final int gutter = dpToPx(FIXED_WRAP_GUTTER_MIN);
+            final boolean fits = mWidestTabWidth * getChildCount() <= specWidth - gutter * 2;
+            final boolean changed = fits
+                    ? setTabWidths(mWidestTabWidth, 0)
+                    : setTabWidths(0, 1);
+
+            if (changed || !measured) {
+                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            }
+        }
+
+        /**
+         * Sets the width and weight of every tab view, returning whether any has changed.
+         */
+        private boolean setTabWidths(int width, float weight) {
+            boolean changed = false;
+            for (int i = 0, z = getChildCount(); i < z; i++) {
+                final LayoutParams lp = (LayoutParams) getChildAt(i).getLayoutParams();
+                if (lp.width != width || lp.weight != weight) {
+                    lp.width = width;
+                    lp.weight = weight;
+                    changed = true;
+                }
+            }
+            return changed;
+        }
+
+        /**
+         * Called when the content of a tab view has changed, or tab views were added or
+         * removed, so the widest tab needs to be found again.
+         */
+        void invalidateWidestTab() {
+            mWidestTabWidth = INVALID_WIDTH;
+        }
+
+        /**
+         * Keeps a gap for the center tab between the two middle tab views, through their
+         * margins. This runs as part of our measure pass, so the gap costs no extra layout.
+         * <p>
+         * Without a set center button width the gap is a share of our width. Returns true if
+         * that width is only known once we're measured, i.e. with an unspecified width as in
+         * scrollable mode, in which case the gap of the last pass is kept until
+         * {@link #fitCenterSlotToContent(int, int)}.
+         */
+        private boolean reserveCenterSlot(int widthMeasureSpec) {
+            final int childCount = getChildCount();
+            View startView = null;
+            View endView = null;
+            int slotWidth = 0;
+            boolean followsContent = false;
+            if (mCenterTab != null && mCenterTab.getVisibility() != GONE && childCount >= 2) {
+                startView = getChildAt(childCount / 2 - 1);
+                endView = getChildAt(childCount / 2);
+                if (mCenterTabWidth != INVALID_WIDTH) {
+                    slotWidth = mCenterTabWidth;
+                } else if (MeasureSpec.getMode(widthMeasureSpec) != MeasureSpec.UNSPECIFIED) {
+                    slotWidth = MeasureSpec.getSize(widthMeasureSpec) / (childCount + 1);
                 } else {
-                    // If the tabs will wrap to be larger than the width minus gutters, we need
-                    // to switch to GRAVITY_FILL
-                    mTabGravity = GRAVITY_FILL;
-                    updateTabViews(false);
-                    remeasure = true;
+                    slotWidth = startView == mCenterSlotStartView ? mCenterSlotWidth : 0;
+                    followsContent = true;
+                }
+            }
+
+            if (mCenterSlotStartView != startView && mCenterSlotStartView != null) {
+                setHorizontalMargins(mCenterSlotStartView, 0, 0);
+            }
+            if (mCenterSlotEndView != endView && mCenterSlotEndView != null) {
+                setHorizontalMargins(mCenterSlotEndView, 0, 0);
+            }
+            if (startView != null) {
+                setHorizontalMargins(startView, 0, slotWidth / 2);
+                setHorizontalMargins(endView, slotWidth / 2, 0);
+            }
+            mCenterSlotStartView = startView;
+            mCenterSlotEndView = endView;
+            mCenterSlotWidth = slotWidth;
+            return followsContent;
+        }
+
+        /**
+         * Sizes the gap to a share of the width we've just been measured at, as
+         * {@link #reserveCenterSlot(int)} does for a given width. The tab views are only
+         * measured again when the gap has changed since the last pass.
+         */
+        private void fitCenterSlotToContent(int widthMeasureSpec, int heightMeasureSpec) {
+            final int contentWidth = getMeasuredWidth() - mCenterSlotWidth / 2 * 2;
+            final int slotWidth = contentWidth / (getChildCount() + 1);
+            if (slotWidth != mCenterSlotWidth) {
+                setHorizontalMargins(mCenterSlotStartView, 0, slotWidth / 2);
+                setHorizontalMargins(mCenterSlotEndView, slotWidth / 2, 0);
+                mCenterSlotWidth = slotWidth;
+                super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+            }
+        }
+
+        private void setHorizontalMargins(View child, int left, int right) {
+            // Set directly rather than through setLayoutParams(), since we are measuring
+            final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+            lp.leftMargin = left;
+            lp.rightMargin = right;
+        }
+
+        /**
+         * Measures the strip from the cached tab widths, only re-measuring every tab when tabs
+         * were added, removed or moved, and only the changed ones when their content changed.
+         * Bound tab views are measured to exactly their cached width.
+         */
+        private void measureVirtualTabs(int widthMeasureSpec, int heightMeasureSpec) {
+            final int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec,
+                    getPaddingTop() + getPaddingBottom(), LayoutParams.MATCH_PARENT);
+            final int tabCount = mTabs.size();
+
+            if (mOffsetsTabCount != tabCount
+                    || mOffsetsHeightMeasureSpec != childHeightMeasureSpec
+                    || mOffsetsTabMaxWidth != getTabMaxWidth()) {
+                measureTabOffsets(childHeightMeasureSpec);
+            } else if (!mDirtyTabs.isEmpty()) {
+                measureDirtyTabs(childHeightMeasureSpec);
+            }
+
+            for (int i = 0, z = getChildCount(); i < z; i++) {
+                measureBoundTabView(getChildAt(i));
+            }
+
+            final int width = getPaddingLeft() + mTabOffsets[tabCount] + getPaddingRight();
+            final int height = getPaddingTop() + mTabsMeasuredHeight + getPaddingBottom();
+            setMeasuredDimension(
+                    resolveSize(Math.max(width, getSuggestedMinimumWidth()), widthMeasureSpec),
+                    resolveSize(Math.max(height, getSuggestedMinimumHeight()), heightMeasureSpec));
+        }
+
+        private void measureTabOffsets(int childHeightMeasureSpec) {
+            final int tabCount = mTabs.size();
+            if (mTabOffsets.length < tabCount + 1) {
+                mTabOffsets = new int[tabCount + 1];
+            }
+
+            int offset = 0;
+            int maxHeight = 0;
+            for (int i = 0; i < tabCount; i++) {
+                final View view = measureTab(mTabs.get(i), childHeightMeasureSpec);
+                mTabOffsets[i] = offset;
+                offset += view.getMeasuredWidth();
+                maxHeight = Math.max(maxHeight, view.getMeasuredHeight());
+            }
+            mTabOffsets[tabCount] = offset;
+            releaseScrapTabView();
+            clearDirtyTabs();
+
+            mTabsMeasuredHeight = maxHeight;
+            mOffsetsTabCount = tabCount;
+            mOffsetsHeightMeasureSpec = childHeightMeasureSpec;
+            mOffsetsTabMaxWidth = getTabMaxWidth();
+        }
+
+        /**
+         * Measures the tabs marked with {@link #onTabChanged(Tab)} again, and moves the cached
+         * offsets of the tabs after each of them by however much its width has changed.
+         */
+        private void measureDirtyTabs(int childHeightMeasureSpec) {
+            for (int i = 0, count = mDirtyTabs.size(); i < count; i++) {
+                final Tab tab = mDirtyTabs.get(i);
+                tab.mOffsetDirty = false;
+                final int position = tab.getPosition();
+                if (tab.mParent != XTabLayout.this || !hasTabOffsets(position)) {
+                    continue;
+                }
+                final View view = measureTab(tab, childHeightMeasureSpec);
+                final int delta = view.getMeasuredWidth() - getTabWidth(position);
+                if (delta != 0) {
+                    for (int j = position + 1; j <= mOffsetsTabCount; j++) {
+                        mTabOffsets[j] += delta;
+                    }
+                }
+                mTabsMeasuredHeight = Math.max(mTabsMeasuredHeight, view.getMeasuredHeight());
+            }
+            mDirtyTabs.clear();
+            releaseScrapTabView();
+        }
+
+        /**
+         * Measures the given tab at its natural width, with its bound view or the scrap view.
+         */
+        private View measureTab(Tab tab, int childHeightMeasureSpec) {
+            TabView view = tab.mView;
+            if (view == null) {
+                // Measure unbound tabs with a scrap view, so we don't need a view per tab
+                if (mScrapTabView == null) {
+                    mScrapTabView = new TabView(XTabLayout.this);
+                }
+                view = mScrapTabView;
+                view.setMinimumWidth(getTabMinWidth());
+                view.setTab(tab);
+            }
+            view.measure(MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED),
+                    childHeightMeasureSpec);
+            return view;
+        }
+
+        private void releaseScrapTabView() {
+            if (mScrapTabView != null) {
+                // Don't keep the last tab, or its custom view, attached to the scrap view
+                mScrapTabView.setTab(null);
+            }
+        }
+
+        private void measureBoundTabView(View child) {
+            final int position = getTabPositionOf(child, -1);
+            if (hasTabOffsets(position)) {
+                child.measure(MeasureSpec.makeMeasureSpec(getTabWidth(position), MeasureSpec.EXACTLY),
+                        mOffsetsHeightMeasureSpec);
+            }
+        }
+
+        private void layoutBoundTabView(View child) {
+            final int position = getTabPositionOf(child, -1);
+            if (hasTabOffsets(position)) {
+                final int left = getTabLeft(position);
+                final int top = getPaddingTop();
+                child.layout(left, top, left + child.getMeasuredWidth(),
+                        top + child.getMeasuredHeight());
+            }
+        }
+
+        /**
+         * Binds views for the tabs within the viewport, plus a margin of half a viewport on each
+         * side, and recycles the views of all other tabs. Newly bound views are measured and laid
+         * out straight away, so scrolling doesn't need a layout pass.
+         */
+        void bindVisibleTabViews() {
+            final int tabCount = mTabs.size();
+            if (!mVirtualizing || mOffsetsTabCount != tabCount) {
+                // We'll be called again from onLayout once the tabs have been measured
+                return;
+            }
+
+            final int viewportWidth = XTabLayout.this.getWidth() > 0
+                    ? XTabLayout.this.getWidth() : XTabLayout.this.getMeasuredWidth();
+            final int margin = viewportWidth / 2;
+            final int scrollX = XTabLayout.this.getScrollX() - getPaddingLeft();
+            final int first = findTabAtOffset(scrollX - margin);
+            final int last = findTabAtOffset(scrollX + viewportWidth + margin);
+
+            // First recycle the views which have moved out of range
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                final View child = getChildAt(i);
+                if (!(child instanceof TabView)) {
+                    continue;
                 }
+                final TabView tabView = (TabView) child;
+                final Tab tab = tabView.getTab();
+                final int position = tab != null ? tab.getPosition() : Tab.INVALID_POSITION;
+                if (position < first || position > last) {
+                    removeViewInLayout(tabView);
+                    if (tab != null) {
+                        tab.mView = null;
+                    }
+                    tabView.reset();
+                    releaseTabView(tabView);
+                }
+            }
+
+            // Then bind the tabs which don't have a view yet
+            boolean bound = false;
+            for (int position = first; position <= last && position < tabCount; position++) {
+                final Tab tab = mTabs.get(position);
+                if (tab.mView == null) {
+                    // The new view follows the selection of the scroll position rather than
+                    // mSelectedTab, see updateSelectedTabView()
+                    final TabView tabView = createTabView(tab);
+                    tab.mView = tabView;
+                    addViewInLayout(tabView, -1, createLayoutParamsForTabs(), true);
+                    measureBoundTabView(tabView);
+                    layoutBoundTabView(tabView);
+                    bound = true;
+                }
+            }
+            if (bound) {
+                invalidate();
+            }
+        }
 
-                if (remeasure) {
-                    // Now re-measure after our changes
-                    super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        /**
+         * Returns the position of the tab containing {@code offset}, clamped to the valid tabs.
+         */
+        private int findTabAtOffset(int offset) {
+            int low = 0;
+            int high = mOffsetsTabCount - 1;
+            while (low < high) {
+                final int mid = (low + high + 1) >>> 1;
+                if (mTabOffsets[mid] <= offset) {
+                    low = mid;
+                } else {
+                    high = mid - 1;
                 }
             }
+            return Math.max(low, 0);
         }
 
         @Override
         protected void onLayout(boolean changed, int l, int t, int r, int b) {
-            super.onLayout(changed, l, t, r, b);
+            final boolean trace = sTraceEnabled;
+            if (trace) {
+                TraceCompat.beginSection(TRACE_STRIP_LAYOUT);
+            }
+            onLayoutPass(LayoutPassStats.VIEW_TAB_STRIP);
+            if (mVirtualizing) {
+                bindVisibleTabViews();
+                for (int i = 0, z = getChildCount(); i < z; i++) {
+                    layoutBoundTabView(getChildAt(i));
+                }
+            } else {
+                super.onLayout(changed, l, t, r, b);
+                mHasUnlaidChild = false;
+                for (int i = 0, z = getChildCount(); i < z; i++) {
+                    if (getChildAt(i).getWidth() <= 0) {
+                        mHasUnlaidChild = true;
+                        break;
+                    }
+                }
+            }
 
-            if (mIndicatorAnimator != null && mIndicatorAnimator.isRunning()) {
-                // If we're currently running an animation, lets cancel it and start a
-                // new animation with the remaining duration
-                mIndicatorAnimator.cancel();
-                final long duration = mIndicatorAnimator.getDuration();
-                animateIndicatorToPosition(mSelectedPosition,
-                        Math.round((1f - mIndicatorAnimator.getAnimatedFraction()) * duration));
+            if (isTabTransitionRunning()) {
+                // If we're currently running an animation, point it at the new tab bounds
+                retargetTabTransition();
             } else {
                 // If we've been layed out, update the indicator position
                 updateIndicatorPosition();
             }
+            if (trace) {
+                TraceCompat.endSection();
+            }
         }
 
         private void updateIndicatorPosition() {
-            final View selectedTitle = getChildAt(mSelectedPosition);
+            final boolean hasSelectedTab = mSelectedPosition >= 0
+                    && mSelectedPosition < getTabCount();
             int left, right;
 
-            if (selectedTitle != null && selectedTitle.getWidth() > 0) {
-                left = selectedTitle.getLeft();
-                right = selectedTitle.getRight();
+            if (hasSelectedTab && getTabWidth(mSelectedPosition) > 0) {
+                left = getTabLeft(mSelectedPosition);
+                right = getTabRight(mSelectedPosition);
 
-                if (mSelectionOffset > 0f && mSelectedPosition < getChildCount() - 1) {
+                if (mSelectionOffset > 0f && mSelectedPosition < getTabCount() - 1) {
                     // Draw the selection partway between the tabs
-                    View nextTitle = getChildAt(mSelectedPosition + 1);
-                    left = (int) (mSelectionOffset * nextTitle.getLeft() +
+                    final int nextPosition = mSelectedPosition + 1;
+                    left = (int) (mSelectionOffset * getTabLeft(nextPosition) +
                             (1.0f - mSelectionOffset) * left);
-                    right = (int) (mSelectionOffset * nextTitle.getRight() +
+                    right = (int) (mSelectionOffset * getTabRight(nextPosition) +
                             (1.0f - mSelectionOffset) * right);
                 }
             } else {
@@ -1970,30 +4086,52 @@ public class XTabLayout extends HorizontalScrollView {
 
         void setIndicatorPosition(int left, int right) {
             if (left != mIndicatorLeft || right != mIndicatorRight) {
-                // If the indicator's left/right has changed, invalidate
                 mIndicatorLeft = left;
                 mIndicatorRight = right;
-                ViewCompat.postInvalidateOnAnimation(this);
+                updateIndicatorView();
             }
         }
 
-        void animateIndicatorToPosition(final int position, int duration) {
-            if (mIndicatorAnimator != null && mIndicatorAnimator.isRunning()) {
-                mIndicatorAnimator.cancel();
+        /**
+         * Moves the indicator view over the indicator's bounds. The view is a pixel wide, and
+         * is moved and stretched with its translation and scale. With hardware acceleration
+         * those only update its render properties, so neither we nor the tab views are drawn
+         * again while the indicator moves. With software rendering our parents don't clip
+         * their children, so the area drawn again is the whole content root either way.
+         */
+        void updateIndicatorView() {
+            if (hasIndicator(mIndicatorLeft, mIndicatorRight)) {
+                mIndicatorView.setTranslationX(
+                        getLeft() - mIndicatorView.getLeft() + mIndicatorLeft);
+                mIndicatorView.setScaleX(mIndicatorRight - mIndicatorLeft);
+            } else {
+                mIndicatorView.setScaleX(0);
             }
+        }
 
-            final boolean isRtl = ViewCompat.getLayoutDirection(this)
-                    == ViewCompat.LAYOUT_DIRECTION_RTL;
+        private boolean hasIndicator(int left, int right) {
+            return left >= 0 && right > left;
+        }
+
+        /**
+         * Sets up the indicator for a tab transition to {@code position}.
+         *
+         * @return true if the indicator needs to move.
+         */
+        boolean prepareIndicatorTransition(int position) {
+            mIndicatorAnimating = false;
 
-            final View targetView = getChildAt(position);
-            if (targetView == null) {
-                // If we don't have a view, just update the position now and return
+            if (position < 0 || position >= getTabCount()) {
+                // If we don't have a tab, just update the position now and return
                 updateIndicatorPosition();
-                return;
+                return false;
             }
 
-            final int targetLeft = targetView.getLeft();
-            final int targetRight = targetView.getRight();
+            final boolean isRtl = ViewCompat.getLayoutDirection(this)
+                    == ViewCompat.LAYOUT_DIRECTION_RTL;
+
+            final int targetLeft = getTabLeft(position);
+            final int targetRight = getTabRight(position);
             final int startLeft;
             final int startRight;
 
@@ -2021,91 +4159,151 @@ public class XTabLayout extends HorizontalScrollView {
                 }
             }
 
-            if (startLeft != targetLeft || startRight != targetRight) {
-                ValueAnimatorCompat animator = mIndicatorAnimator = ViewUtils.createAnimator();
-                animator.setInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR);
-                animator.setDuration(duration);
-                animator.setFloatValues(0, 1);
-                animator.addUpdateListener(new ValueAnimatorCompat.AnimatorUpdateListener() {
-                    @Override
-                    public void onAnimationUpdate(ValueAnimatorCompat animator) {
-                        final float fraction = animator.getAnimatedFraction();
-                        setIndicatorPosition(
-                                AnimationUtils.lerp(startLeft, targetLeft, fraction),
-                                AnimationUtils.lerp(startRight, targetRight, fraction));
-                    }
-                });
-                animator.addListener(new ValueAnimatorCompat.AnimatorListenerAdapter() {
-                    @Override
-                    public void onAnimationEnd(ValueAnimatorCompat animator) {
-                        mSelectedPosition = position;
-                        mSelectionOffset = 0f;
-                    }
-                });
-                animator.start();
+            mIndicatorStartLeft = startLeft;
+            mIndicatorStartRight = startRight;
+            mIndicatorStartFraction = 0f;
+            mIndicatorTargetLeft = targetLeft;
+            mIndicatorTargetRight = targetRight;
+            mIndicatorAnimating = startLeft != targetLeft || startRight != targetRight;
+            return mIndicatorAnimating;
+        }
+
+        void setIndicatorTransitionFraction(float fraction) {
+            if (mIndicatorAnimating) {
+                setIndicatorPosition(
+                        lerpTransition(mIndicatorStartLeft, mIndicatorTargetLeft,
+                                mIndicatorStartFraction, fraction),
+                        lerpTransition(mIndicatorStartRight, mIndicatorTargetRight,
+                                mIndicatorStartFraction, fraction));
+            }
+        }
+
+        void retargetIndicatorTransition(int position, float fraction) {
+            if (!mIndicatorAnimating || position < 0 || position >= getTabCount()) {
+                return;
+            }
+            final int targetLeft = getTabLeft(position);
+            final int targetRight = getTabRight(position);
+            mIndicatorStartLeft = mIndicatorLeft;
+            mIndicatorStartRight = mIndicatorRight;
+            mIndicatorStartFraction = fraction;
+            mIndicatorTargetLeft = targetLeft;
+            mIndicatorTargetRight = targetRight;
+        }
+
+        void endIndicatorTransition(int position) {
+            if (mIndicatorAnimating) {
+                mIndicatorAnimating = false;
+                mSelectedPosition = position;
+                mSelectionOffset = 0f;
             }
         }
 
         @Override
         public void draw(Canvas canvas) {
+            final boolean trace = sTraceEnabled;
+            if (trace) {
+                TraceCompat.beginSection(TRACE_STRIP_DRAW);
+            }
+            if (mLayoutPassStats != null) {
+                // Drawing ends the frame
+                endLayoutPassFrame();
+            }
             super.draw(canvas);
 
-            // Thick colored underline below the current selection
-            if (mIndicatorLeft >= 0 && mIndicatorRight > mIndicatorLeft) {
-                canvas.drawRect(mIndicatorLeft, getHeight() - mSelectedIndicatorHeight,
-                        mIndicatorRight, getHeight(), mSelectedIndicatorPaint);
+            // The indicator is drawn by mIndicatorView, over us
+            if (mLayoutPassOverlayEnabled) {
+                drawLayoutPassOverlay(canvas);
+            }
+            if (trace) {
+                TraceCompat.endSection();
             }
         }
     }
 
+    private void endLayoutPassFrame() {
+        int maxMeasures = 0;
+        int maxLayouts = 0;
+        for (int i = 0, count = mTabStrip.getChildCount(); i < count; i++) {
+            final View child = mTabStrip.getChildAt(i);
+            if (child instanceof TabView) {
+                final TabView tabView = (TabView) child;
+                maxMeasures = Math.max(maxMeasures, tabView.mMeasurePasses);
+                maxLayouts = Math.max(maxLayouts, tabView.mLayoutPasses);
+                tabView.mMeasurePasses = 0;
+                tabView.mLayoutPasses = 0;
+            }
+        }
+        mLayoutPassStats.endFrame(maxMeasures, maxLayouts);
+    }
+
+    private void drawLayoutPassOverlay(Canvas canvas) {
+        final Paint paint = mLayoutPassOverlayPaint;
+        final String text = mLayoutPassStats.toString();
+        // Keep the overlay at the left of what is on screen, however far we've scrolled
+        final float left = getScrollX() - mTabStrip.getLeft() + dpToPx(2);
+        final float top = dpToPx(2);
+        final float textHeight = paint.getTextSize();
+        paint.setColor(0xB0000000);
+        canvas.drawRect(left, top, left + paint.measureText(text) + dpToPx(4),
+                top + textHeight + dpToPx(4), paint);
+        paint.setColor(0xFFFFFFFF);
+        canvas.drawText(text, left + dpToPx(2), top + dpToPx(2) + textHeight * 0.8f, paint);
+    }
+
     private class ContentRoot extends FrameLayout {
 
+        // The width we fill in scrollable mode, when the tabs are narrower, see onMeasure()
+        int mMinWidth;
+
         public ContentRoot(Context context) {
             super(context);
             setClipChildren(false);
         }
 
+        @Override
+        protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+            super.onLayout(changed, left, top, right, bottom);
+            // The strip may have moved, keep the indicator on its bottom edge
+            mTabStrip.updateIndicatorView();
+            onLayoutPass(LayoutPassStats.VIEW_CONTENT_ROOT);
+        }
+
         protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-            final int idealHeight = dpToPx(getDefaultHeight()) + getPaddingTop() + getPaddingBottom();
-            switch (MeasureSpec.getMode(heightMeasureSpec)) {
-                case MeasureSpec.AT_MOST:
-                    heightMeasureSpec = MeasureSpec.makeMeasureSpec(
-                            Math.min(idealHeight, MeasureSpec.getSize(heightMeasureSpec)),
-                            MeasureSpec.EXACTLY);
-                    break;
-                case MeasureSpec.UNSPECIFIED:
-                    heightMeasureSpec = MeasureSpec.makeMeasureSpec(idealHeight, MeasureSpec.EXACTLY);
-                    break;
+            final boolean trace = sTraceEnabled;
+            if (trace) {
+                TraceCompat.beginSection(TRACE_CONTENT_ROOT_MEASURE);
             }
+            onMeasurePass(LayoutPassStats.VIEW_CONTENT_ROOT);
 
-            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
-
-            if (getChildCount() == 1) {
-                // If we're in fixed mode then we need to make the tab strip is the same width as us
-                // so we don't scroll
-                final View child = getChildAt(0);
-                boolean remeasure = false;
-
-                switch (mMode) {
-                    case MODE_SCROLLABLE:
-                        // We only need to resize the child if it's smaller than us. This is similar
-                        // to fillViewport
-                        remeasure = child.getMeasuredWidth() < getMeasuredWidth();
-                        break;
-                    case MODE_FIXED:
-                        // Resize the child so that it doesn't scroll
-                        remeasure = child.getMeasuredWidth() != getMeasuredWidth();
-                        break;
+            // XTabLayout has settled our height, and our width in fixed mode, so each child is
+            // measured once with the final specs
+            int maxWidth = 0;
+            for (int i = 0, count = getChildCount(); i < count; i++) {
+                final View child = getChildAt(i);
+                if (child.getVisibility() != GONE && child != mCenterTab) {
+                    measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec, 0);
+                    final MarginLayoutParams lp = (MarginLayoutParams) child.getLayoutParams();
+                    maxWidth = Math.max(maxWidth,
+                            child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin);
                 }
+            }
+            if (mCenterTab != null && mCenterTab.getVisibility() != GONE) {
+                // Fill the slot which the strip has just reserved
+                mCenterTab.measure(
+                        MeasureSpec.makeMeasureSpec(mTabStrip.mCenterSlotWidth,
+                                MeasureSpec.EXACTLY),
+                        getChildMeasureSpec(heightMeasureSpec,
+                                getPaddingTop() + getPaddingBottom(),
+                                mCenterTab.getLayoutParams().height));
+            }
+            final int width = Math.max(maxWidth + getPaddingLeft() + getPaddingRight(),
+                    mMinWidth);
+            setMeasuredDimension(resolveSize(width, widthMeasureSpec),
+                    MeasureSpec.getSize(heightMeasureSpec));
 
-                if (remeasure) {
-                    // Re-measure the child with a widthSpec set to be exactly our measure width
-                    int childHeightMeasureSpec = getChildMeasureSpec(heightMeasureSpec, getPaddingTop()
-                            + getPaddingBottom(), child.getLayoutParams().height);
-                    int childWidthMeasureSpec = MeasureSpec.makeMeasureSpec(
-                            getMeasuredWidth(), MeasureSpec.EXACTLY);
-                    child.measure(childWidthMeasureSpec, childHeightMeasureSpec);
-                }
+            if (trace) {
+                TraceCompat.endSection();
             }
         }
 
@@ -2129,15 +4327,20 @@ public class XTabLayout extends HorizontalScrollView {
     }
 
     private int getDefaultHeight() {
-        boolean hasIconAndText = false;
-        for (int i = 0, count = mTabs.size(); i < count; i++) {
-            Tab tab = mTabs.get(i);
-            if (tab != null && tab.getIcon() != null && !TextUtils.isEmpty(tab.getText())) {
-                hasIconAndText = true;
-                break;
-            }
+        return mIconAndTextTabCount > 0 ? DEFAULT_HEIGHT_WITH_TEXT_ICON : DEFAULT_HEIGHT;
+    }
+
+    /**
+     * Keeps {@link #mIconAndTextTabCount} up to date, this is called whenever a tab is
+     * positioned, changed or reset.
+     */
+    void updateIconAndTextTabCount(Tab tab) {
+        final boolean iconAndText = tab.mPosition != Tab.INVALID_POSITION
+                && tab.getIcon() != null && !TextUtils.isEmpty(tab.getText());
+        if (iconAndText != tab.mCountedAsIconAndText) {
+            tab.mCountedAsIconAndText = iconAndText;
+            mIconAndTextTabCount += iconAndText ? 1 : -1;
         }
-        return hasIconAndText ? DEFAULT_HEIGHT_WITH_TEXT_ICON : DEFAULT_HEIGHT;
     }
 
     private int getTabMinWidth() {
@@ -2259,12 +4462,12 @@ public class XTabLayout extends HorizontalScrollView {
 
         @Override
         public void onChanged() {
-            populateFromPagerAdapter();
+            syncFromPagerAdapter();
         }
 
         @Override
         public void onInvalidated() {
-            populateFromPagerAdapter();
+            syncFromPagerAdapter();
         }
     }
 
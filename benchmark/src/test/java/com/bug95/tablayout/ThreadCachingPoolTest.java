@@ -0,0 +1,89 @@
+package com.bug95.tablayout;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertNull;
+
+/**
+ * Stresses {@link ThreadCachingPool} from several threads at once. The pool is kept small, so
+ * that the threads keep draining into and taking from the shared overflow area.
+ */
+public class ThreadCachingPoolTest {
+
+    private static final int THREAD_COUNT = 8;
+    private static final int ITERATIONS = 200000;
+    private static final int MAX_HELD = 12;
+
+    /**
+     * An instance which knows whether it is currently handed out.
+     */
+    private static class Token {
+        final AtomicBoolean mAcquired = new AtomicBoolean();
+    }
+
+    @Test
+    public void concurrentAcquireAndRelease() throws InterruptedException {
+        final ThreadCachingPool<Token> pool = new ThreadCachingPool<>(4, 8);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[THREAD_COUNT];
+
+        for (int t = 0; t < THREAD_COUNT; t++) {
+            final long seed = t;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        exercise(pool, new Random(seed));
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            }, "pool-stress-" + t);
+            threads[t].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(String.valueOf(failure.get()), failure.get());
+    }
+
+    /**
+     * Acquires a random number of instances, then releases a random number of those held,
+     * failing if an instance is handed out while another thread still has it.
+     */
+    private static void exercise(ThreadCachingPool<Token> pool, Random random) {
+        final ArrayList<Token> held = new ArrayList<>(MAX_HELD);
+        for (int i = 0; i < ITERATIONS; i++) {
+            for (int n = random.nextInt(MAX_HELD - held.size() + 1); n > 0; n--) {
+                Token token = pool.acquire();
+                if (token == null) {
+                    token = new Token();
+                }
+                if (!token.mAcquired.compareAndSet(false, true)) {
+                    throw new AssertionError("Instance handed out twice");
+                }
+                held.add(token);
+            }
+            for (int n = random.nextInt(held.size() + 1); n > 0; n--) {
+                final Token token = held.remove(held.size() - 1);
+                // Before releasing, after which another thread may take it straight away
+                token.mAcquired.set(false);
+                pool.release(token);
+            }
+        }
+        for (Token token : held) {
+            token.mAcquired.set(false);
+            pool.release(token);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.bug95.tablayout.benchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Collects benchmark timings and writes them as JSON, one entry per benchmark, mode and tab
+ * count, so results of different commits can be diffed or compared by a script.
+ */
+final class BenchmarkReport {
+
+    private static final class Entry {
+        final String name;
+        final String mode;
+        final int tabCount;
+        final long[] samples;
+
+        Entry(String name, String mode, int tabCount, long[] samples) {
+            this.name = name;
+            this.mode = mode;
+            this.tabCount = tabCount;
+            this.samples = samples;
+        }
+    }
+
+    private final List<Entry> mEntries = new ArrayList<>();
+
+    /**
+     * Adds the per-operation timings, in nanoseconds, of one benchmark run.
+     */
+    void add(String name, String mode, int tabCount, long[] samples) {
+        final long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        mEntries.add(new Entry(name, mode, tabCount, sorted));
+        System.out.println(String.format(Locale.US, "%-32s %-10s %5d tabs  median %,12d ns",
+                name, mode, tabCount, sorted[sorted.length / 2]));
+    }
+
+    void writeTo(File file, String commit) throws IOException {
+        final File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+
+        final StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"commit\": \"").append(escape(commit)).append("\",\n");
+        json.append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n");
+        json.append("  \"unit\": \"ns\",\n");
+        json.append("  \"results\": [");
+        for (int i = 0, count = mEntries.size(); i < count; i++) {
+            final Entry entry = mEntries.get(i);
+            final long[] samples = entry.samples;
+            long total = 0;
+            for (long sample : samples) {
+                total += sample;
+            }
+            json.append(i == 0 ? "\n" : ",\n");
+            json.append("    {\"name\": \"").append(escape(entry.name))
+                    .append("\", \"mode\": \"").append(entry.mode)
+                    .append("\", \"tabs\": ").append(entry.tabCount)
+                    .append(", \"iterations\": ").append(samples.length)
+                    .append(", \"min\": ").append(samples[0])
+                    .append(", \"median\": ").append(samples[samples.length / 2])
+                    .append(", \"mean\": ").append(total / samples.length)
+                    .append(", \"max\": ").append(samples[samples.length - 1])
+                    .append('}');
+        }
+        json.append("\n  ]\n}\n");
+
+        final Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(json.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+}
@@ -0,0 +1,275 @@
+package com.bug95.tablayout.benchmark;
+
+import android.content.Context;
+import android.support.v4.view.PagerAdapter;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.bug95.tablayout.XTabLayout;
+
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Times the measure, layout and scroll paths of {@link XTabLayout} on the JVM.
+ * <p>
+ * Absolute numbers are Robolectric numbers and don't translate to a device, but they do scale
+ * with the work done per call, which is what we want to compare between commits.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class XTabLayoutBenchmark {
+
+    private static final int[] TAB_COUNTS = {4, 50, 500, 5000};
+    private static final int[] MODES = {XTabLayout.MODE_FIXED, XTabLayout.MODE_SCROLLABLE};
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 144;
+
+    private static final BenchmarkReport sReport = new BenchmarkReport();
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mContext.setTheme(android.support.v7.appcompat.R.style.Theme_AppCompat_Light);
+    }
+
+    @AfterClass
+    public static void writeReport() throws IOException {
+        sReport.writeTo(new File(System.getProperty("benchmark.output",
+                "benchmark-results.json")), System.getProperty("benchmark.commit"));
+    }
+
+    @Test
+    public void tabLayoutMeasure() {
+        for (int mode : MODES) {
+            for (int tabCount : TAB_COUNTS) {
+                final XTabLayout tabLayout = createTabLayout(mode, tabCount);
+                run("XTabLayout.onMeasure", mode, tabCount, new Runnable() {
+                    @Override
+                    public void run() {
+                        // A full pass, as after a configuration change
+                        forceLayoutTree(tabLayout);
+                        measureAndLayout(tabLayout);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void tabLayoutRemeasure() {
+        for (int mode : MODES) {
+            for (int tabCount : TAB_COUNTS) {
+                final XTabLayout tabLayout = createTabLayout(mode, tabCount);
+                run("XTabLayout.onMeasure (unchanged)", mode, tabCount, new Runnable() {
+                    @Override
+                    public void run() {
+                        // A pass where nothing about the tabs has changed, as when a sibling
+                        // requests a layout
+                        tabLayout.requestLayout();
+                        measureAndLayout(tabLayout);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void tabStripMeasure() {
+        for (int mode : MODES) {
+            for (int tabCount : TAB_COUNTS) {
+                final XTabLayout tabLayout = createTabLayout(mode, tabCount);
+                final View tabStrip = getTabStrip(tabLayout);
+                final int widthSpec = View.MeasureSpec.makeMeasureSpec(
+                        tabStrip.getMeasuredWidth(), View.MeasureSpec.EXACTLY);
+                final int heightSpec = View.MeasureSpec.makeMeasureSpec(
+                        tabStrip.getMeasuredHeight(), View.MeasureSpec.EXACTLY);
+                run("SlidingTabStrip.onMeasure", mode, tabCount, new Runnable() {
+                    @Override
+                    public void run() {
+                        forceLayoutTree(tabStrip);
+                        tabStrip.measure(widthSpec, heightSpec);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void tabStripLayout() {
+        for (int mode : MODES) {
+            for (int tabCount : TAB_COUNTS) {
+                final XTabLayout tabLayout = createTabLayout(mode, tabCount);
+                final View tabStrip = getTabStrip(tabLayout);
+                final int width = tabStrip.getMeasuredWidth();
+                final int height = tabStrip.getMeasuredHeight();
+                run("SlidingTabStrip.onLayout", mode, tabCount, new Runnable() {
+                    int mLeft;
+
+                    @Override
+                    public void run() {
+                        // Move the strip by a pixel, so that onLayout() always sees a change
+                        mLeft ^= 1;
+                        tabStrip.layout(mLeft, 0, mLeft + width, height);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void setScrollPosition() {
+        for (int mode : MODES) {
+            for (final int tabCount : TAB_COUNTS) {
+                final XTabLayout tabLayout = createTabLayout(mode, tabCount);
+                run("XTabLayout.setScrollPosition", mode, tabCount, new Runnable() {
+                    int mFrame;
+
+                    @Override
+                    public void run() {
+                        // Emulate a swipe across all tabs, 8 frames per tab
+                        final int position = (mFrame / 8) % tabCount;
+                        final float offset = (mFrame % 8) / 8f;
+                        mFrame++;
+                        tabLayout.setScrollPosition(position, offset, true);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void populateFromPagerAdapter() {
+        for (int mode : MODES) {
+            for (int tabCount : TAB_COUNTS) {
+                final XTabLayout tabLayout = createTabLayout(mode, 0);
+                final PagerAdapter adapter = new TitlePagerAdapter(tabCount);
+                run("populateFromPagerAdapter", mode, tabCount, new Runnable() {
+                    @Override
+                    public void run() {
+                        tabLayout.setTabsFromPagerAdapter(adapter);
+                        measureAndLayout(tabLayout);
+                    }
+                });
+            }
+        }
+    }
+
+    @Test
+    public void insertTab() {
+        for (int mode : MODES) {
+            for (final int tabCount : TAB_COUNTS) {
+                runInsertTab("front", mode, tabCount, 0);
+                runInsertTab("middle", mode, tabCount, tabCount / 2);
+                runInsertTab("back", mode, tabCount, tabCount);
+            }
+        }
+    }
+
+    private void runInsertTab(String where, int mode, int tabCount, final int position) {
+        final XTabLayout tabLayout = createTabLayout(mode, tabCount);
+        run("addTab+removeTabAt (" + where + ")", mode, tabCount, new Runnable() {
+            @Override
+            public void run() {
+                // Remove the tab again, to keep the tab count steady
+                tabLayout.addTab(tabLayout.newTab().setText(getTitle(position)), position, false);
+                tabLayout.removeTabAt(position);
+            }
+        });
+    }
+
+    private XTabLayout createTabLayout(int mode, int tabCount) {
+        final XTabLayout tabLayout = new XTabLayout(mContext);
+        tabLayout.setTabMode(mode);
+        for (int i = 0; i < tabCount; i++) {
+            tabLayout.addTab(tabLayout.newTab().setText(getTitle(i)));
+        }
+        measureAndLayout(tabLayout);
+        return tabLayout;
+    }
+
+    private static void measureAndLayout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    static void forceLayoutTree(View view) {
+        view.forceLayout();
+        if (view instanceof ViewGroup) {
+            final ViewGroup group = (ViewGroup) view;
+            for (int i = 0, count = group.getChildCount(); i < count; i++) {
+                forceLayoutTree(group.getChildAt(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the SlidingTabStrip among the children of the tab layout's content root.
+     */
+    static ViewGroup getTabStrip(XTabLayout tabLayout) {
+        final ViewGroup contentRoot = (ViewGroup) tabLayout.getChildAt(0);
+        for (int i = 0, count = contentRoot.getChildCount(); i < count; i++) {
+            final View child = contentRoot.getChildAt(i);
+            if (child.getClass().getSimpleName().equals("SlidingTabStrip")) {
+                return (ViewGroup) child;
+            }
+        }
+        throw new IllegalStateException("No tab strip in " + tabLayout);
+    }
+
+    private static void run(String name, int mode, int tabCount, Runnable operation) {
+        // Keep every benchmark within a few seconds, whatever the tab count
+        final int iterations = Math.max(5, Math.min(200, 20000 / tabCount));
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+
+        final long[] samples = new long[iterations];
+        for (int i = 0; i < iterations; i++) {
+            final long start = System.nanoTime();
+            operation.run();
+            samples[i] = System.nanoTime() - start;
+        }
+        sReport.add(name, mode == XTabLayout.MODE_FIXED ? "fixed" : "scrollable", tabCount,
+                samples);
+    }
+
+    static String getTitle(int position) {
+        return "Tab " + position;
+    }
+
+    private static class TitlePagerAdapter extends PagerAdapter {
+        private final int mCount;
+
+        TitlePagerAdapter(int count) {
+            mCount = count;
+        }
+
+        @Override
+        public int getCount() {
+            return mCount;
+        }
+
+        @Override
+        public boolean isViewFromObject(View view, Object object) {
+            return view == object;
+        }
+
+        @Override
+        public CharSequence getPageTitle(int position) {
+            return getTitle(position);
+        }
+    }
+}
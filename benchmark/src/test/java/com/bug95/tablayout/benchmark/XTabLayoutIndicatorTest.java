@@ -0,0 +1,119 @@
+package com.bug95.tablayout.benchmark;
+
+import android.app.Activity;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.bug95.tablayout.XTabLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.lang.reflect.Field;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Checks what a moving indicator invalidates: only the indicator's own view, never the tab
+ * strip or the tab views, so that their display lists are kept while the indicator follows a
+ * swipe.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class XTabLayoutIndicatorTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 144;
+    private static final int INDICATOR_HEIGHT = 6;
+
+    private static Field sPrivateFlags;
+    private static int sInvalidatedFlag;
+
+    private XTabLayout mTabLayout;
+
+    @Before
+    public void setUp() throws Exception {
+        sPrivateFlags = View.class.getDeclaredField("mPrivateFlags");
+        sPrivateFlags.setAccessible(true);
+        final Field invalidated = View.class.getDeclaredField("PFLAG_INVALIDATED");
+        invalidated.setAccessible(true);
+        sInvalidatedFlag = invalidated.getInt(null);
+
+        // Attached to a window, so that invalidations travel up the hierarchy
+        final Activity activity = Robolectric.setupActivity(Activity.class);
+        mTabLayout = new XTabLayout(activity);
+        mTabLayout.setTabMode(XTabLayout.MODE_FIXED);
+        mTabLayout.setSelectedTabIndicatorHeight(INDICATOR_HEIGHT);
+        for (int i = 0; i < 4; i++) {
+            mTabLayout.addTab(mTabLayout.newTab().setText(XTabLayoutBenchmark.getTitle(i)));
+        }
+        activity.setContentView(mTabLayout, new ViewGroup.LayoutParams(WIDTH, HEIGHT));
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        mTabLayout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        mTabLayout.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void movingIndicatorOnlyInvalidatesIndicatorView() throws Exception {
+        final ViewGroup tabStrip = XTabLayoutBenchmark.getTabStrip(mTabLayout);
+        final View indicator = getIndicatorView();
+        final View firstTab = tabStrip.getChildAt(0);
+        final View secondTab = tabStrip.getChildAt(1);
+
+        // Up to half way, so that the selected tab view stays the same
+        for (int frame = 1; frame < 8; frame++) {
+            final float offset = frame / 16f;
+            clearInvalidated(tabStrip);
+            mTabLayout.setScrollPosition(0, offset, true);
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+            assertFalse("Tab strip invalidated in frame " + frame, isInvalidated(tabStrip));
+            for (int i = 0; i < tabStrip.getChildCount(); i++) {
+                assertFalse("Tab view " + i + " invalidated in frame " + frame,
+                        isInvalidated(tabStrip.getChildAt(i)));
+            }
+
+            // The indicator's view covers exactly the indicator, along the strip's bottom
+            final int left = (int) (offset * secondTab.getLeft()
+                    + (1f - offset) * firstTab.getLeft());
+            final int right = (int) (offset * secondTab.getRight()
+                    + (1f - offset) * firstTab.getRight());
+            assertEquals(tabStrip.getLeft() + left,
+                    indicator.getLeft() + indicator.getTranslationX(), 0.5f);
+            assertEquals(right - left, indicator.getWidth() * indicator.getScaleX(), 0.5f);
+            assertEquals(INDICATOR_HEIGHT, indicator.getHeight());
+            assertEquals(tabStrip.getBottom(), indicator.getBottom());
+        }
+    }
+
+    /**
+     * Returns the view drawing the indicator, which is the last child of the content root.
+     */
+    private View getIndicatorView() {
+        final ViewGroup contentRoot = (ViewGroup) mTabLayout.getChildAt(0);
+        return contentRoot.getChildAt(contentRoot.getChildCount() - 1);
+    }
+
+    private static void clearInvalidated(ViewGroup group) throws IllegalAccessException {
+        sPrivateFlags.setInt(group, sPrivateFlags.getInt(group) & ~sInvalidatedFlag);
+        for (int i = 0; i < group.getChildCount(); i++) {
+            final View child = group.getChildAt(i);
+            sPrivateFlags.setInt(child, sPrivateFlags.getInt(child) & ~sInvalidatedFlag);
+        }
+    }
+
+    /**
+     * Returns whether the view's display list would be recorded again, which is what
+     * invalidate() and its partial forms mark a view for.
+     */
+    private static boolean isInvalidated(View view) throws IllegalAccessException {
+        return (sPrivateFlags.getInt(view) & sInvalidatedFlag) != 0;
+    }
+}
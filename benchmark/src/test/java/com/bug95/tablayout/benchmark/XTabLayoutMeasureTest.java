@@ -0,0 +1,163 @@
+package com.bug95.tablayout.benchmark;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.bug95.tablayout.LayoutPassStats;
+import com.bug95.tablayout.XTabLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a full layout pass measures every view of the tab layout once, in both tab
+ * modes, with the counts of {@link LayoutPassStats}, and that skipping passes doesn't leave
+ * stale tab widths behind.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class XTabLayoutMeasureTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 144;
+
+    // Tabs which fit in the viewport, and tabs which overflow it
+    private static final int[] TAB_COUNTS = {4, 40};
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mContext.setTheme(android.support.v7.appcompat.R.style.Theme_AppCompat_Light);
+    }
+
+    @Test
+    public void fixedModeMeasuresChildrenOnce() {
+        for (int tabCount : TAB_COUNTS) {
+            assertMeasuredOnce(XTabLayout.MODE_FIXED, XTabLayout.GRAVITY_FILL, tabCount);
+            assertMeasuredOnce(XTabLayout.MODE_FIXED, XTabLayout.GRAVITY_CENTER, tabCount);
+        }
+    }
+
+    @Test
+    public void scrollableModeMeasuresChildrenOnce() {
+        for (int tabCount : TAB_COUNTS) {
+            assertMeasuredOnce(XTabLayout.MODE_SCROLLABLE, XTabLayout.GRAVITY_FILL, tabCount);
+        }
+    }
+
+    @Test
+    public void scrollableModeReservesCenterSlot() {
+        final XTabLayout tabLayout = new XTabLayout(mContext);
+        tabLayout.setTabMode(XTabLayout.MODE_SCROLLABLE);
+        for (int i = 0; i < 4; i++) {
+            tabLayout.addTab(tabLayout.newTab().setText(XTabLayoutBenchmark.getTitle(i)));
+        }
+        // Without a center button width, the slot is a share of the strip's width
+        tabLayout.prepareForCenterTab(new View(mContext), null);
+        measureAndLayout(tabLayout);
+
+        // The center tab is the first child of the content root
+        final View centerTab = ((ViewGroup) tabLayout.getChildAt(0)).getChildAt(0);
+        final ViewGroup tabStrip = XTabLayoutBenchmark.getTabStrip(tabLayout);
+        assertTrue("Center tab width: " + centerTab.getMeasuredWidth(),
+                centerTab.getMeasuredWidth() > 0);
+        assertEquals(centerTab.getMeasuredWidth() / 2 * 2,
+                tabStrip.getChildAt(2).getLeft() - tabStrip.getChildAt(1).getRight());
+    }
+
+    @Test
+    public void centeredTabsFollowWidthChange() {
+        // Narrow enough that the tabs don't fit, so the wide tab, which comes last, only gets
+        // what the others leave and is held below its natural width
+        final XTabLayout resized = createCenteredTabLayout();
+        measureAndLayout(resized, 240);
+        final ViewGroup resizedStrip = XTabLayoutBenchmark.getTabStrip(resized);
+        final View wideTab = resizedStrip.getChildAt(resizedStrip.getChildCount() - 1);
+        assertTrue("Wide tab width: " + wideTab.getWidth(), wideTab.getWidth() < 300);
+        measureAndLayout(resized, WIDTH);
+
+        final XTabLayout expected = createCenteredTabLayout();
+        measureAndLayout(expected, WIDTH);
+
+        final ViewGroup expectedStrip = XTabLayoutBenchmark.getTabStrip(expected);
+        for (int i = 0; i < expectedStrip.getChildCount(); i++) {
+            assertEquals("Tab " + i + " width", expectedStrip.getChildAt(i).getWidth(),
+                    resizedStrip.getChildAt(i).getWidth());
+        }
+    }
+
+    private XTabLayout createCenteredTabLayout() {
+        final XTabLayout tabLayout = new XTabLayout(mContext);
+        tabLayout.setTabMode(XTabLayout.MODE_FIXED);
+        tabLayout.setTabGravity(XTabLayout.GRAVITY_CENTER);
+        tabLayout.addTab(tabLayout.newTab().setText(XTabLayoutBenchmark.getTitle(0)));
+        tabLayout.addTab(tabLayout.newTab().setText(XTabLayoutBenchmark.getTitle(1)));
+        tabLayout.addTab(tabLayout.newTab().setCustomView(new WideView(mContext)));
+        return tabLayout;
+    }
+
+    private void assertMeasuredOnce(int mode, int gravity, int tabCount) {
+        final XTabLayout tabLayout = new XTabLayout(mContext);
+        tabLayout.setTabMode(mode);
+        tabLayout.setTabGravity(gravity);
+        for (int i = 0; i < tabCount; i++) {
+            tabLayout.addTab(tabLayout.newTab().setText(XTabLayoutBenchmark.getTitle(i)));
+        }
+        measureAndLayout(tabLayout);
+        tabLayout.setLayoutPassCountingEnabled(true);
+
+        // A full pass, as after a configuration change, then the draw which ends the frame
+        XTabLayoutBenchmark.forceLayoutTree(tabLayout);
+        measureAndLayout(tabLayout);
+        final Canvas canvas = new Canvas(Bitmap.createBitmap(WIDTH, HEIGHT,
+                Bitmap.Config.ARGB_8888));
+        XTabLayoutBenchmark.getTabStrip(tabLayout).draw(canvas);
+
+        final LayoutPassStats stats = tabLayout.getLayoutPassStats();
+        final String frame = "mode " + mode + ", gravity " + gravity + ", " + tabCount + " tabs: "
+                + stats;
+        assertEquals(frame, 1, stats.getFrameCount());
+        assertEquals(frame, 1, stats.getMeasureCount(LayoutPassStats.VIEW_TAB_LAYOUT));
+        assertEquals(frame, 1, stats.getMeasureCount(LayoutPassStats.VIEW_CONTENT_ROOT));
+        assertEquals(frame, 1, stats.getMeasureCount(LayoutPassStats.VIEW_TAB_STRIP));
+        assertEquals(frame, 1, stats.getMaxTabViewMeasureCount());
+    }
+
+    private static void measureAndLayout(View view) {
+        measureAndLayout(view, WIDTH);
+    }
+
+    private static void measureAndLayout(View view, int width) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+    }
+
+    /**
+     * A tab's custom view which would like to be 300px wide, but takes less when it has to.
+     */
+    private static class WideView extends View {
+
+        WideView(Context context) {
+            super(context);
+        }
+
+        @Override
+        protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+            setMeasuredDimension(resolveSize(300, widthMeasureSpec),
+                    getDefaultSize(getSuggestedMinimumHeight(), heightMeasureSpec));
+        }
+    }
+}
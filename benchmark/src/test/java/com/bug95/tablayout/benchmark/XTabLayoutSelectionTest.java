@@ -0,0 +1,164 @@
+package com.bug95.tablayout.benchmark;
+
+import android.content.Context;
+import android.support.v4.view.ViewPager;
+import android.view.View;
+
+import com.bug95.tablayout.XTabLayout;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Checks that following a ViewPager swipe only touches the tab views whose selected state
+ * changes, and that the selected views stay consistent while the selection lags behind.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 25)
+public class XTabLayoutSelectionTest {
+
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 144;
+
+    // Swipe across the first tabs, 8 frames per tab, as TabLayoutOnPageChangeListener sees it
+    private static final int SWIPE_TABS = 8;
+    private static final int FRAMES_PER_TAB = 8;
+
+    private Context mContext;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mContext.setTheme(android.support.v7.appcompat.R.style.Theme_AppCompat_Light);
+    }
+
+    @Test
+    public void onPageScrolledVisitsAtMostTwoTabViews() {
+        final XTabLayout tabLayout = createTabLayout(XTabLayout.MODE_SCROLLABLE, 200);
+        final XTabLayout.TabLayoutOnPageChangeListener listener = startDrag(tabLayout);
+
+        int maxVisits = 0;
+        for (int frame = 0; frame < SWIPE_TABS * FRAMES_PER_TAB; frame++) {
+            SelectionCountingView.sSelectionChanges = 0;
+            scroll(listener, frame);
+            maxVisits = Math.max(maxVisits, SelectionCountingView.sSelectionChanges);
+        }
+        assertTrue("Tab views visited in a frame: " + maxVisits, maxVisits <= 2);
+    }
+
+    @Test
+    public void onPageScrolledAllocationDoesNotGrowWithTabCount() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        // Both overflow the viewport, so they scroll by the same amounts
+        final long fewTabs = measureSwipeAllocation(threads, 20);
+        final long manyTabs = measureSwipeAllocation(threads, 200);
+        final int frames = SWIPE_TABS * FRAMES_PER_TAB;
+        assertTrue("Bytes allocated per frame with 20 tabs: " + fewTabs / frames
+                        + ", with 200 tabs: " + manyTabs / frames,
+                manyTabs <= fewTabs + frames * 64);
+    }
+
+    @Test
+    public void updatingLaggingSelectedTabKeepsOneSelectedView() {
+        final XTabLayout tabLayout = createTabLayout(XTabLayout.MODE_FIXED, 5);
+        final XTabLayout.TabLayoutOnPageChangeListener listener = startDrag(tabLayout);
+
+        // Past the middle of tab 0 and 1 the views show tab 1 as selected, while the selected
+        // tab is still tab 0 until the ViewPager settles
+        listener.onPageScrolled(0, 0.6f, 0);
+        assertEquals(0, tabLayout.getSelectedTabPosition());
+        assertSelectedViews(tabLayout, 1);
+
+        // Updating the selected tab mustn't show its view as selected again
+        tabLayout.getTabAt(0).setText("Renamed");
+        assertSelectedViews(tabLayout, 1);
+
+        listener.onPageScrolled(0, 0.2f, 0);
+        assertSelectedViews(tabLayout, 0);
+    }
+
+    private long measureSwipeAllocation(com.sun.management.ThreadMXBean threads, int tabCount) {
+        final XTabLayout tabLayout = createTabLayout(XTabLayout.MODE_SCROLLABLE, tabCount);
+        final XTabLayout.TabLayoutOnPageChangeListener listener = startDrag(tabLayout);
+        final int frames = SWIPE_TABS * FRAMES_PER_TAB;
+        // Warm up, so that we don't count one-off allocations
+        for (int frame = 0; frame < frames; frame++) {
+            scroll(listener, frame);
+        }
+
+        final long threadId = Thread.currentThread().getId();
+        final long start = threads.getThreadAllocatedBytes(threadId);
+        for (int frame = 0; frame < frames; frame++) {
+            scroll(listener, frame);
+        }
+        return threads.getThreadAllocatedBytes(threadId) - start;
+    }
+
+    private static void scroll(XTabLayout.TabLayoutOnPageChangeListener listener, int frame) {
+        listener.onPageScrolled(frame / FRAMES_PER_TAB,
+                (frame % FRAMES_PER_TAB) / (float) FRAMES_PER_TAB, 0);
+    }
+
+    private static XTabLayout.TabLayoutOnPageChangeListener startDrag(XTabLayout tabLayout) {
+        final XTabLayout.TabLayoutOnPageChangeListener listener =
+                new XTabLayout.TabLayoutOnPageChangeListener(tabLayout);
+        listener.onPageScrollStateChanged(ViewPager.SCROLL_STATE_DRAGGING);
+        return listener;
+    }
+
+    private static void assertSelectedViews(XTabLayout tabLayout, int expectedPosition) {
+        for (int i = 0, count = tabLayout.getTabCount(); i < count; i++) {
+            final View view = tabLayout.getTabAt(i).getCustomView();
+            assertEquals("Tab " + i + " selected", i == expectedPosition, view.isSelected());
+        }
+    }
+
+    private XTabLayout createTabLayout(int mode, int tabCount) {
+        final XTabLayout tabLayout = new XTabLayout(mContext);
+        tabLayout.setTabMode(mode);
+        for (int i = 0; i < tabCount; i++) {
+            tabLayout.addTab(tabLayout.newTab()
+                    .setText(XTabLayoutBenchmark.getTitle(i))
+                    .setCustomView(new SelectionCountingView(mContext)));
+        }
+        tabLayout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        tabLayout.layout(0, 0, tabLayout.getMeasuredWidth(), tabLayout.getMeasuredHeight());
+        return tabLayout;
+    }
+
+    /**
+     * A tab's custom view, which counts how often the tab views change their selected state.
+     * The tab view passes every change on to its custom view.
+     */
+    private static class SelectionCountingView extends View {
+        static int sSelectionChanges;
+
+        SelectionCountingView(Context context) {
+            super(context);
+            setMinimumWidth(120);
+        }
+
+        @Override
+        public void setSelected(boolean selected) {
+            sSelectionChanges++;
+            super.setSelected(selected);
+        }
+    }
+}